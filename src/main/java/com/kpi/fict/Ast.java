@@ -0,0 +1,366 @@
+package com.kpi.fict;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+public class Ast {
+    public static final int NONE = -1;
+
+    private static final Token[] TOKENS = Token.values();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAGIC = 0x43415354;
+    private static final int VERSION = 2;
+
+    private final Symbols symbols;
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] lastChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int[] nodeSymbols = new int[INITIAL_CAPACITY];
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int size;
+    private int stringCount;
+    private int root = NONE;
+
+    public Ast(Symbols symbols) {
+        this.symbols = symbols;
+    }
+
+    public int add(Token type) {
+        ensureCapacity(size + 1);
+
+        kinds[size] = (byte) (type == null ? NONE : type.ordinal());
+        firstChildren[size] = NONE;
+        lastChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        values[size] = NONE;
+        nodeSymbols[size] = Symbols.NONE;
+
+        return size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > kinds.length) {
+            capacity = Math.max(capacity, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            values = Arrays.copyOf(values, capacity);
+            nodeSymbols = Arrays.copyOf(nodeSymbols, capacity);
+        }
+    }
+
+    public int add(Token type, String value) {
+        int node = add(type);
+        setValue(node, value);
+
+        return node;
+    }
+
+    public int add(Token type, int symbol) {
+        int node = add(type);
+        nodeSymbols[node] = symbol;
+
+        return node;
+    }
+
+    public int append(Ast chunk, int from) {
+        int offset = size - from;
+        int count = chunk.size - from;
+        int stringOffset = stringCount;
+        ensureCapacity(size + count);
+
+        if (stringCount + chunk.stringCount > strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(stringCount + chunk.stringCount, strings.length * 2));
+        }
+        System.arraycopy(chunk.strings, 0, strings, stringCount, chunk.stringCount);
+        stringCount += chunk.stringCount;
+
+        System.arraycopy(chunk.kinds, from, kinds, size, count);
+        System.arraycopy(chunk.nodeSymbols, from, nodeSymbols, size, count);
+        for (int i = 0; i < count; i++) {
+            firstChildren[size + i] = shift(chunk.firstChildren[from + i], offset);
+            lastChildren[size + i] = shift(chunk.lastChildren[from + i], offset);
+            nextSiblings[size + i] = shift(chunk.nextSiblings[from + i], offset);
+            values[size + i] = shift(chunk.values[from + i], stringOffset);
+        }
+        size += count;
+
+        return offset;
+    }
+
+    private static int shift(int handle, int offset) {
+        return handle == NONE ? NONE : handle + offset;
+    }
+
+    public void addChild(int parent, int child) {
+        if (child == NONE) {
+            return;
+        }
+
+        if (firstChildren[parent] == NONE) {
+            firstChildren[parent] = child;
+        } else {
+            nextSiblings[lastChildren[parent]] = child;
+        }
+        lastChildren[parent] = child;
+    }
+
+    public void setChildren(int parent, int[] children) {
+        firstChildren[parent] = NONE;
+        lastChildren[parent] = NONE;
+
+        for (int child : children) {
+            nextSiblings[child] = NONE;
+            addChild(parent, child);
+        }
+    }
+
+    public void replace(int node, int with) {
+        kinds[node] = kinds[with];
+        values[node] = values[with];
+        nodeSymbols[node] = nodeSymbols[with];
+        firstChildren[node] = firstChildren[with];
+        lastChildren[node] = lastChildren[with];
+    }
+
+    public void setType(int node, Token type) {
+        kinds[node] = (byte) (type == null ? NONE : type.ordinal());
+    }
+
+    public void setValue(int node, String value) {
+        if (value == null) {
+            values[node] = NONE;
+            return;
+        }
+
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+
+        strings[stringCount] = value;
+        values[node] = stringCount++;
+    }
+
+    public void setSymbol(int node, int symbol) {
+        nodeSymbols[node] = symbol;
+    }
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Symbols symbols() {
+        return symbols;
+    }
+
+    public Token type(int node) {
+        return kinds[node] == NONE ? null : TOKENS[kinds[node]];
+    }
+
+    public boolean is(int node, Token type) {
+        return kinds[node] == type.ordinal();
+    }
+
+    public String value(int node) {
+        if (values[node] != NONE) {
+            return strings[values[node]];
+        }
+
+        return nodeSymbols[node] == Symbols.NONE ? null : symbols.name(nodeSymbols[node]);
+    }
+
+    public int symbol(int node) {
+        return nodeSymbols[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int child(int node, int index) {
+        int child = firstChildren[node];
+        for (int i = 0; i < index && child != NONE; i++) {
+            child = nextSiblings[child];
+        }
+
+        if (child == NONE) {
+            throw new RuntimeException(String.format("There is no child %d for node %s", index, describe(node)));
+        }
+
+        return child;
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+
+        return count;
+    }
+
+    public String describe(int node) {
+        String value = value(node);
+        if (value != null) {
+            return "" + type(node) + "(" + value + ")";
+        }
+
+        return "" + type(node);
+    }
+
+    public ByteBuffer encode() {
+        byte[][] names = new byte[symbols.size()][];
+        byte[][] pool = new byte[stringCount][];
+        int capacity = 7 * Integer.BYTES + size + 5 * size * Integer.BYTES;
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = symbols.name(i).getBytes(StandardCharsets.UTF_8);
+            capacity += Integer.BYTES + names[i].length;
+        }
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            capacity += Integer.BYTES + pool[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+
+        buffer.putInt(names.length);
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+
+        buffer.putInt(size).putInt(root);
+        buffer.put(kinds, 0, size);
+        for (int[] array : new int[][] {firstChildren, lastChildren, nextSiblings, values, nodeSymbols}) {
+            buffer.asIntBuffer().put(array, 0, size);
+            buffer.position(buffer.position() + size * Integer.BYTES);
+        }
+
+        buffer.putInt(pool.length);
+        for (byte[] string : pool) {
+            buffer.putInt(string.length).put(string);
+        }
+
+        buffer.flip();
+        buffer.putInt(2 * Integer.BYTES, checksum(buffer.slice(3 * Integer.BYTES, buffer.limit() - 3 * Integer.BYTES)));
+
+        return buffer;
+    }
+
+    public static Ast decode(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new RuntimeException("Unsupported AST format");
+        }
+        if (buffer.getInt() != checksum(buffer.slice())) {
+            throw new RuntimeException("Corrupted AST data");
+        }
+
+        Symbols symbols = new Symbols();
+        int symbolCount = count(buffer, Integer.BYTES);
+        for (int i = 0; i < symbolCount; i++) {
+            symbols.intern(string(buffer));
+        }
+
+        Ast ast = new Ast(symbols);
+        int size = count(buffer, 1 + 5 * Integer.BYTES);
+        ast.ensureCapacity(size);
+        ast.size = size;
+        ast.root = buffer.getInt();
+        buffer.get(ast.kinds, 0, size);
+        for (int[] array : new int[][] {ast.firstChildren, ast.lastChildren, ast.nextSiblings, ast.values, ast.nodeSymbols}) {
+            buffer.asIntBuffer().get(array, 0, size);
+            buffer.position(buffer.position() + size * Integer.BYTES);
+        }
+
+        int stringCount = count(buffer, Integer.BYTES);
+        ast.strings = new String[Math.max(stringCount, INITIAL_CAPACITY)];
+        for (int i = 0; i < stringCount; i++) {
+            ast.strings[i] = string(buffer);
+        }
+        ast.stringCount = stringCount;
+        ast.validate();
+
+        return ast;
+    }
+
+    private void validate() {
+        boolean valid = root >= 0 && root < size;
+        BitSet linked = new BitSet(size);
+        linked.set(root);
+
+        for (int i = 0; i < size && valid; i++) {
+            valid = (kinds[i] == NONE || kinds[i] >= 0 && kinds[i] < TOKENS.length)
+                    && isHandle(firstChildren[i], size)
+                    && isHandle(lastChildren[i], size)
+                    && isHandle(nextSiblings[i], size)
+                    && isHandle(values[i], stringCount)
+                    && isHandle(nodeSymbols[i], symbols.size())
+                    && (firstChildren[i] == NONE) == (lastChildren[i] == NONE)
+                    && link(linked, firstChildren[i])
+                    && link(linked, nextSiblings[i]);
+        }
+
+        if (!valid) {
+            throw new RuntimeException("Corrupted AST data");
+        }
+    }
+
+    private static boolean link(BitSet linked, int handle) {
+        if (handle == NONE) {
+            return true;
+        }
+
+        if (linked.get(handle)) {
+            return false;
+        }
+
+        linked.set(handle);
+        return true;
+    }
+
+    private static boolean isHandle(int handle, int count) {
+        return handle == NONE || handle >= 0 && handle < count;
+    }
+
+    private static int checksum(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        return (int) crc.getValue();
+    }
+
+    private static int count(ByteBuffer buffer, int elementSize) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * elementSize > buffer.remaining()) {
+            throw new RuntimeException("Corrupted AST data");
+        }
+
+        return count;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = new byte[count(buffer, 1)];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
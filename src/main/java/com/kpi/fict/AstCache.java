@@ -0,0 +1,65 @@
+package com.kpi.fict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class AstCache {
+    private static final String EXTENSION = ".ast";
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public String key(MappedSource source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.bytes());
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Ast load(String key) {
+        Path file = directory.resolve(key + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            return Ast.decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public void store(String key, Ast ast) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, ast.encode().array());
+            Files.move(temporary, directory.resolve(key + EXTENSION),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.printf("Warning: can't write AST cache to %s: %s%n", directory, e.getMessage());
+
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.kpi.fict;
+
+import java.util.Arrays;
+
+public class AstWalker {
+
+    public interface Visitor {
+        boolean enter(int node, int depth);
+
+        default void leave(int node, int depth) {
+        }
+    }
+
+    private final Ast ast;
+    private int[] stack = new int[64];
+    private int size;
+
+    public AstWalker(Ast ast) {
+        this.ast = ast;
+    }
+
+    public void walk(int root, Visitor visitor) {
+        int bottom = size;
+        int node = root;
+
+        try {
+            while (true) {
+                int depth = size - bottom;
+                int child = ast.firstChild(node);
+
+                if (visitor.enter(node, depth) && child != Ast.NONE) {
+                    push(node);
+                    node = child;
+                    continue;
+                }
+
+                visitor.leave(node, depth);
+
+                while (true) {
+                    if (size == bottom) {
+                        return;
+                    }
+
+                    int sibling = ast.nextSibling(node);
+                    if (sibling != Ast.NONE) {
+                        node = sibling;
+                        break;
+                    }
+
+                    node = stack[--size];
+                    visitor.leave(node, size - bottom);
+                }
+            }
+        } finally {
+            size = bottom;
+        }
+    }
+
+    private void push(int node) {
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+        }
+
+        stack[size++] = node;
+    }
+}
@@ -1,86 +1,45 @@
 package com.kpi.fict;
 
+import java.io.PrintStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class Compiler {
 
-    private enum Command {
-        MOV, ADD, ADC, SUB, SBB, CMP, JMP, JE,
-        JNE, JG, JL, JGE, JLE, INC, DEC, PUSH,
-        POP, INVOKE, INCLUDE, INCLUDE_LIB, RETURN, CALL
-    }
-
     private enum Data {
-        DB(1), DW(2), DD(4), DF(6), DQ(8), DT(10);
-        final int size;
-        Data(int size) {
-            this.size = size;
-        }
-    }
-
-    private enum Register {
-        EAX, EBX, ECX, EDX, EBP, ESP, EDI, ESI
+        DB, DW, DD, DF, DQ, DT
     }
 
     private static class Procedure {
-        final Node node;
+        final int node;
         final String name;
-        final List<String> params;
-        final List<String> directives = new ArrayList<>();
+        final int[] params;
+        boolean reachable;
 
-        public Procedure(Node node, String name, List<String> params) {
+        public Procedure(int node, String name, int[] params) {
             this.node = node;
             this.name = name;
             this.params = params;
         }
-
-        void addDirective(String directive) {
-            directives.add(directive);
-        }
-
-        void addDirectives(Collection<String> directives) {
-            this.directives.addAll(directives);
-        }
-    }
-
-    private static class Condition {
-        final Command command;
-        final String operand1, operand2;
-        final List<String> directives = new ArrayList<>();
-
-        public Condition(Command command, String operand1, String operand2) {
-            this.command = command;
-            this.operand1 = operand1;
-            this.operand2 = operand2;
-        }
     }
 
     private static class Variable {
         Data type;
         final String name;
+        final int symbol;
 
-        public Variable(String name) {
+        public Variable(String name, int symbol) {
             this.name = name;
+            this.symbol = symbol;
         }
 
-        public Variable(Data type, String name) {
+        public Variable(Data type, String name, int symbol) {
+            this(name, symbol);
             this.type = type;
-            this.name = name;
         }
 
-        public void setType(Data type) {
-            this.type = type;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (obj.getClass() != this.getClass()) {
-                return false;
-            }
-
-            return ((Variable) obj).name.equals(this.name);
+        public Ir.Operand operand() {
+            return Ir.Operand.variable(symbol, name);
         }
     }
 
@@ -96,610 +55,544 @@ public class Compiler {
             this.value = value;
             this.isArray = isArray;
         }
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj.getClass() != this.getClass()) {
-                return false;
-            }
+    private final Ast ast;
+    private final RegisterAllocator allocator;
+    private final ConstantFolder folder;
+    private final Parser parser;
+    private final Symbols symbols;
+    private Variable[] variablesBySymbol;
+    private final SymbolTable<Procedure> procedures;
+    private final List<Procedure> declaredProcedures = new ArrayList<>();
+    private final SymbolTable<Variable> scope = new SymbolTable<>();
+    private List<Variable> locals;
+    private Ir ir;
+    private int[] needs = new int[0];
+    private final List<Variable> variables = new ArrayList<>();
+    private final Map<String, Constant> constants = new LinkedHashMap<>();
+    private final Map<String, Constant> messages = new HashMap<>();
+    private int messageCount;
+    private Emitter emitter;
+    private PrintStream irDump;
+
+    private final Map<Token, Ir.Op> MATH_OPERATIONS = new HashMap<>() {{
+       put(Token.PLUS, Ir.Op.ADD);
+       put(Token.MINUS, Ir.Op.SUB);
+    }};
 
-            return ((Constant) obj).name.equals(this.name);
-        }
+    public Compiler(Ast ast) {
+        this(ast, null);
     }
 
-    private final Node root;
-    private final Set<Variable> variables = new HashSet<>();
-    private final Set<Constant> constants = new HashSet<>();
-    private final Set<Procedure> procedures = new HashSet<>();
-    private final List<String> program = new ArrayList<>();
+    public Compiler(Parser parser) {
+        this(parser.getAst(), parser);
+    }
 
-    private final Map<Token, Command> JUMP_COMMANDS = new HashMap<>() {{
-       put(Token.EQUAL, Command.JE);
-       put(Token.NOT_EQUAL, Command.JNE);
-       put(Token.LESS, Command.JL);
-       put(Token.MORE, Command.JG);
-       put(Token.LESS_EQUAL, Command.JLE);
-       put(Token.MORE_EQUAL, Command.JGE);
-    }};
+    private Compiler(Ast ast, Parser parser) {
+        this.ast = ast;
+        this.parser = parser;
+        symbols = ast.symbols();
+        allocator = new RegisterAllocator();
+        folder = new ConstantFolder(ast);
+        variablesBySymbol = new Variable[symbols.size()];
+        procedures = new SymbolTable<>();
+    }
 
-    private final Map<Token, Command> MATH_COMMANDS = new HashMap<>() {{
-       put(Token.PLUS, Command.ADD);
-       put(Token.MINUS, Command.SUB);
-    }};
+    public void setIrDump(PrintStream irDump) {
+        this.irDump = irDump;
+    }
 
-    public Compiler(Node root) {
-        this.root = root;
+    public void compile(WritableByteChannel output) {
+        compile(output, new Peephole());
     }
 
-    public void compile() {
-        initConfiguration();
-        compile(root);
-        constants();
-        variables();
+    public void compile(WritableByteChannel output, Peephole peephole) {
+        try (Emitter emitter = new Emitter(output, peephole)) {
+            this.emitter = emitter;
+            initConfiguration();
+            compile(ast.root());
+            constants();
+            variables();
+            emitter.finish();
+        }
     }
 
-    private void compile(Node node) {
-        switch (node.type) {
+    private void compile(int node) {
+        switch (ast.type(node)) {
 
             case PROGRAM -> {
-                List<Node> children = node.getChildren();
-                children.forEach(this::compile);
+                for (int child = ast.firstChild(node); child != Ast.NONE; child = ast.nextSibling(child)) {
+                    compile(child);
+                }
+
+                for (Procedure procedure : reachable()) {
+                    compileProcedure(procedure);
+                }
             }
 
             case PROCEDURE -> {
-                List<Node> children = node.getChildren();
-                String name = children.get(0).value;
-
-                Procedure procedure = new Procedure(node, name, children.get(1).getChildren().stream().map(node1 -> node1.value).toList());
-                procedures.add(procedure);
-                addVariables(children.get(1));
-
-                directives(procedure, children.subList(2, children.size()));
-                int insertIndex = IntStream.range(0, program.size())
-                        .filter(index -> program.get(index).equals(".code"))
-                        .findAny()
-                        .getAsInt() + 1;
-
-                if (name.equals("main")) {
-                    program.addAll(procedure.directives);
-                    program.add("\n");
-                } else {
-                    program.addAll(insertIndex, procedure.directives);
-                    program.add(insertIndex + procedure.directives.size(), "\n");
+                int header = ast.firstChild(node);
+                int parameters = ast.nextSibling(header);
+                String name = ast.value(header);
+
+                int[] params = new int[ast.childCount(parameters)];
+                int index = 0;
+                for (int param = ast.firstChild(parameters); param != Ast.NONE; param = ast.nextSibling(param)) {
+                    params[index++] = ast.symbol(param);
                 }
+
+                Procedure procedure = new Procedure(node, name, params);
+                addProcedure(ast.symbol(header), procedure);
+                declaredProcedures.add(procedure);
             }
         }
     }
 
-    private void directives(Procedure procedure, List<Node> directives) {
-        List<String> commands = new ArrayList<>();
+    private List<Procedure> reachable() {
+        AstWalker walker = new AstWalker(ast);
+        Deque<Procedure> pending = new ArrayDeque<>();
+        Procedure main = procedures.lookup(symbols.find("main"));
+        for (Procedure procedure : main != null ? List.of(main) : declaredProcedures) {
+            procedure.reachable = true;
+            pending.push(procedure);
+        }
 
-        int insertLine = 0;
-        if (!procedure.name.equals("main")) {
-            commands.add(procedure.name + " proc");
-            commands.add("push ebp");
-            commands.add("mov ebp, esp");
+        while (!pending.isEmpty()) {
+            Procedure procedure = pending.pop();
+            if (parser != null) {
+                parser.parseBody(procedure.node);
+            }
+            folder.fold(procedure.node);
 
-            insertLine += 3;
+            walker.walk(procedure.node, (node, depth) -> {
+                if (ast.is(node, Token.FUNCTION) && !ast.value(node).equals("printf")) {
+                    Procedure callee = procedures.lookup(ast.symbol(node));
+                    if (callee == null) {
+                        throw new RuntimeException("Unknown procedure " + ast.value(node));
+                    }
 
-            Map<String, Register> registers = new HashMap<>();
+                    if (!callee.reachable) {
+                        callee.reachable = true;
+                        pending.push(callee);
+                    }
+                }
 
-            for (int i = 0; i < procedure.params.size(); i++) {
-                Register register = Register.values()[i];
+                return true;
+            });
+        }
 
-                commands.add(String.format("mov %s, [ebp+%d]", register, 8 + 4 * i));
-                registers.put(procedure.params.get(i), register);
-                insertLine++;
+        List<Procedure> reachable = new ArrayList<>();
+        for (Procedure procedure : declaredProcedures) {
+            if (procedure.reachable) {
+                reachable.add(procedure);
             }
+        }
 
-            int currentJump = 0;
-            for (Node node : directives) {
-                List<Node> children = node.getChildren();
-                if (node.type == Token.IF || node.type == Token.ELSE_IF) {
-                    Node conditionNode = children.get(0);
-                    currentJump = multiCondition(procedure,
-                            conditionNode,
-                            children.subList(1, children.size()),
-                            registers,
-                            commands,
-                            currentJump,
-                            insertLine);
-
-                    insertLine += 2;
-
-                } else if (node.type == Token.ELSE) {
-                    List<String> internalCommands = new ArrayList<>();
-
-                    internalCommands.add(String.format("@%s%d:", procedure.name, jumpCount(procedure.node)));
-
-                    for (Node child : children) {
-                        switch (child.type) {
-                            case CALCULATION -> internalCommands.addAll(calculation(child, registers));
-                            case INITIALIZATION -> internalCommands.addAll(initialization(node));
-                            case DECLARATION -> declaration(node);
-                            case RETURN -> {
-                                Node value = child.getChild();
-                                if (value.type != Token.ID) {
-                                    internalCommands.add("mov eax, " + value.value);
-                                }
-                                internalCommands.add("pop ebp");
-                                internalCommands.add("ret");
-                            }
-                        }
-                    }
+        return reachable;
+    }
 
-                    commands.addAll(insertLine + 1, internalCommands);
-                }
-            }
+    private void compileProcedure(Procedure procedure) {
+        locals = new ArrayList<>();
+        scope.enter();
 
-            commands.add(procedure.name + " endp");
-            procedure.addDirectives(commands);
+        int parameters = ast.child(procedure.node, 1);
+        boolean main = procedure.name.equals("main");
+        ir = new Ir(procedure.name, addVariables(parameters));
 
-        } else {
-            commands.add("main:");
-            insertLine = 1;
-
-            for (Node node : directives) {
-                switch (node.type) {
-                    case DECLARATION -> declaration(node);
-                    case INITIALIZATION -> {
-                        List<String> initCommands = initialization(node);
-                        commands.addAll(initCommands);
-                        insertLine += initCommands.size();
-                    }
-                    case ELSE -> {
-                        int currentJump = 0;
-                        List<Node> children = node.getChildren();
-
-                        for (Node child : children) {
-                            List<Node> nodes = child.getChildren();
-
-                            if (child.type == Token.INITIALIZATION) {
-                                List<String> initCommands = initialization(child);
-                                commands.addAll(initCommands);
-                                insertLine += initCommands.size();
-
-                            } else if (child.type == Token.FUNCTION && child.value.equals("printf")) {
-                                commands.add(printf(child));
-
-                            } else if (child.type == Token.IF || child.type == Token.ELSE_IF) {
-                                Node conditionNode = nodes.get(0);
-
-                                currentJump = multiCondition(procedure,
-                                        conditionNode,
-                                        nodes.subList(1, child.getChildren().size()),
-                                        new HashMap<>(),
-                                        commands,
-                                        currentJump,
-                                        insertLine);
-
-                                insertLine += 2;
-
-                            } else if (child.type == Token.ELSE) {
-                                List<String> internalCommands = new ArrayList<>();
-
-                                for (Node node1 : nodes) {
-                                    switch (node1.type) {
-                                        case CALCULATION -> internalCommands.addAll(calculation(child, new HashMap<>()));
-                                        case INITIALIZATION -> internalCommands.addAll(initialization(node1));
-                                        case DECLARATION -> declaration(node1);
-                                        case RETURN -> {
-                                            Node value = node1.getChild();
-                                            if (value.type != Token.ID) {
-                                                internalCommands.add("mov eax, " + value.value);
-                                            }
-                                        }
-                                        case FUNCTION -> {
-                                            if (node1.value.equals("printf")) internalCommands.add(printf(node1));
-                                        }
-                                    }
-                                }
-
-                                internalCommands.add("jmp @end");
-                                commands.addAll(insertLine + 1, internalCommands);
-                            }
-                        }
-                    }
-                }
+        statements(ast.nextSibling(parameters));
+        if (!ir.isTerminated()) {
+            ir.ret(main ? Ir.Operand.immediate("0") : null);
+        }
+        scope.exit();
+
+        new ControlFlow(ir).optimize();
+        if (irDump != null) {
+            irDump.print(ir.dump());
+        }
+
+        RegisterAllocator.Allocation allocation = allocator.allocate(ir, Lowering.REGISTER_COUNT);
+        Lowering lowering = new Lowering(ir, allocation);
+        Emitter.Listing listing = lowering.lower();
+
+        for (Variable var : locals) {
+            if (lowering.inMemory(var.symbol)) {
+                addVariableIfAbsent(var);
             }
+        }
+        for (String home : lowering.homes()) {
+            variables.add(new Variable(Data.DD, home, Symbols.NONE));
+        }
 
-            commands.add("@end:");
-            commands.add("invoke ExitProcess, 0");
-            commands.add("end main");
+        if (main) {
+            emitter.appendProcedure(listing);
+        } else {
+            emitter.prependProcedure(listing);
+        }
+    }
 
-            procedure.addDirectives(commands);
+    private void statements(int first) {
+        for (int node = first; node != Ast.NONE; node = ast.nextSibling(node)) {
+            switch (ast.type(node)) {
+                case DECLARATION -> declaration(node);
+                case INITIALIZATION -> initialization(node);
+                case CALCULATION -> calculation(node);
+                case IF -> node = conditional(node);
+                case BLOCK -> block(ast.firstChild(node));
+                case RETURN -> {
+                    int value = ast.firstChild(node);
+                    ir.ret(value == Ast.NONE ? null : value(value));
+                }
+                case FUNCTION -> function(node, null);
+                default -> throw new RuntimeException("Unexpected statement " + ast.describe(node));
+            }
         }
     }
 
-    private int multiCondition(Procedure procedure,
-                                Node conditionNode,
-                                List<Node> nodes,
-                                Map<String, Register> registers,
-                                List<String> commands,
-                                int currentJump,
-                                int currentLine) {
-        List<String> internalCommands = new ArrayList<>();
+    private void block(int first) {
+        scope.enter();
+        statements(first);
+        scope.exit();
+    }
 
-        if (conditionNode.type == Token.AND || conditionNode.type == Token.OR) {
-            List<Node> conditions = conditionNode.getChildren();
+    private int conditional(int node) {
+        Ir.Block join = ir.block();
 
-            List<String> trueDirectives = new ArrayList<>();
+        while (true) {
+            int condition = ast.firstChild(node);
+            int next = ast.nextSibling(node);
+            boolean chained = next != Ast.NONE && (ast.is(next, Token.ELSE_IF) || ast.is(next, Token.ELSE));
 
-            for (Node condChild : conditions) {
-                String jump = "@" + procedure.name + currentJump++;
+            Ir.Block then = ir.block();
+            Ir.Block otherwise = chained ? ir.block() : join;
 
-                List<Node> operators = condChild.getChildren();
-                if (operators.stream().allMatch(oper -> oper.type == Token.ID)) {
-                    registers.put(operators.get(1).value, Register.EAX);
-                }
+            branch(condition, then, otherwise);
+            ir.place(then);
+            block(ast.nextSibling(condition));
+            ir.jump(join);
 
-                Condition condition = condition(condChild, nodes, registers);
-                comparison(registers, internalCommands, condition);
+            if (!chained) {
+                break;
+            }
 
-                internalCommands.add(String.format("%s %s", condition.command, jump));
-                internalCommands.add(jump + ":");
+            ir.place(otherwise);
+            node = next;
 
-                if (trueDirectives.isEmpty()) {
-                    trueDirectives.addAll(condition.directives);
-                }
+            if (ast.is(next, Token.ELSE)) {
+                block(ast.firstChild(next));
+                ir.jump(join);
+                break;
             }
+        }
 
-            internalCommands.add(internalCommands.size() - 1, "JMP @to_lower_case" + (currentJump == 2 ? 4 : 5));
-            internalCommands.addAll(trueDirectives);
+        ir.place(join);
+        return node;
+    }
 
-        } else {
-            String jump = "@" + procedure.name + currentJump;
-            Condition condition = condition(conditionNode, nodes, registers);
+    private void branch(int condition, Ir.Block ifTrue, Ir.Block ifFalse) {
+        if (ast.is(condition, Token.AND) || ast.is(condition, Token.OR)) {
+            boolean and = ast.is(condition, Token.AND);
 
-            List<Node> operators = conditionNode.getChildren();
+            for (int child = ast.firstChild(condition); ; child = ast.nextSibling(child)) {
+                if (ast.nextSibling(child) == Ast.NONE) {
+                    branch(child, ifTrue, ifFalse);
+                    return;
+                }
 
-            if (registers.containsKey(operators.get(1).value)) {
-                internalCommands.add(String.format("mov %s, %s",
-                        registers.get(operators.get(1).value),
-                        operators.get(1).value));
+                Ir.Block next = ir.block();
+                if (and) {
+                    branch(child, next, ifFalse);
+                } else {
+                    branch(child, ifTrue, next);
+                }
+                ir.place(next);
             }
-
-            comparison(registers, internalCommands, condition);
-
-            internalCommands.add(String.format("%s @%s",
-                    JUMP_COMMANDS.get(conditionNode.type),
-                    procedure.name + currentJump++));
-            internalCommands.add(jump + ":");
-            internalCommands.addAll(condition.directives);
         }
 
-        if (procedure.name.equals("main")) {
-            internalCommands.add("jmp @end");
+        if (!Parser.COMPARE.contains(ast.type(condition))) {
+            throw new RuntimeException("Illegal condition " + ast.describe(condition));
         }
-        commands.addAll(currentLine, internalCommands);
 
-        return currentJump;
+        ir.branch(ast.type(condition),
+                value(ast.child(condition, 0)),
+                value(ast.child(condition, 1)),
+                ifTrue,
+                ifFalse);
     }
 
-    private void comparison(Map<String, Register> registers, List<String> internalCommands, Condition condition) {
-        String operand1 = condition.operand1;
-        String operand2 = condition.operand2;
+    private void calculation(int node) {
+        Ir.Operand target = variable(ast.child(node, 0));
+        int value = ast.child(node, 1);
+        if (needs.length < ast.size()) {
+            needs = new int[ast.size()];
+        }
+        label(value, true);
 
-        internalCommands.add(String.format("cmp %s, %s",
-                registers.containsKey(operand1)
-                        ? registers.get(operand1)
-                        : operand1,
-                registers.containsKey(operand2)
-                        ? registers.get(operand2)
-                        : (Lexer.isHex(operand2)
-                            ? operand2.substring(2).concat("h")
-                            : (Lexer.isOct(operand2)
-                                ? operand2.substring(1).concat("o")
-                                : operand2))
-        ));
+        Ir.Operand result = expression(value, target);
+        if (!result.same(target)) {
+            ir.emit(Ir.Op.MOVE, target, result);
+        }
+    }
 
-        if (internalCommands.get(internalCommands.size() - 1).equals("cmp EAX, 0")) {
-            internalCommands.add(internalCommands.size() - 1, "@to_lower_case4:");
+    private int label(int node, boolean left) {
+        int need = left ? 1 : 0;
+        if (MATH_OPERATIONS.containsKey(ast.type(node))) {
+            int need1 = label(ast.child(node, 0), true);
+            int need2 = label(ast.child(node, 1), false);
+            need = need1 == need2 ? need1 + 1 : Math.max(need1, need2);
         }
+
+        needs[node] = need;
+        return need;
     }
 
-    private Condition condition(Node conditionNode, List<Node> nodes, Map<String, Register> registers) {
-        List<Node> operands = conditionNode.getChildren();
+    private Ir.Operand expression(int node, Ir.Operand target) {
+        Ir.Op op = MATH_OPERATIONS.get(ast.type(node));
+        if (op == null) {
+            return value(node);
+        }
 
-        if (operands.stream().allMatch(oper -> oper.type == Token.ID)) {
-            registers.put(operands.get(1).value, Register.EAX);
+        int left = ast.child(node, 0);
+        int right = ast.child(node, 1);
+        boolean leftLeaf = !MATH_OPERATIONS.containsKey(ast.type(left));
+        boolean rightLeaf = !MATH_OPERATIONS.containsKey(ast.type(right));
+        if (op == Ir.Op.ADD && (needs[right] > needs[left] || leftLeaf && !rightLeaf)) {
+            int swap = left;
+            left = right;
+            right = swap;
         }
 
-        Condition condition = new Condition(JUMP_COMMANDS.get(conditionNode.type),
-                operands.get(0).value,
-                operands.get(1).value);
+        boolean rightFirst = needs[right] > needs[left];
+        Ir.Operand operand2 = rightFirst ? expression(right, null) : null;
+        Ir.Operand operand1 = expression(left, null);
+        if (!rightFirst) {
+            operand2 = expression(right, null);
+        }
 
-        List<String> directives = new ArrayList<>();
-        for (Node node : nodes) {
-            switch (node.type) {
-                case CALCULATION -> directives.addAll(calculation(node, registers));
-                case INITIALIZATION -> directives.addAll(initialization(node));
-                case DECLARATION -> declaration(node);
-                case RETURN -> {
-                    directives.add("pop ebp");
-                    directives.add("ret");
-                }
-                case FUNCTION -> {
-                    if (node.value.equals("printf")) {
-                        directives.add(printf(node));
-                    }
-                }
-            }
+        Ir.Operand result = target;
+        if (result == null) {
+            result = operand1.is(Ir.Kind.TEMP) ? operand1 : operand2.is(Ir.Kind.TEMP) ? operand2 : ir.temp();
         }
+        ir.emit(op, result, operand1, operand2);
 
-        condition.directives.addAll(directives);
-        return condition;
+        return result;
     }
 
-    private List<String> calculation(Node node, Map<String, Register> registers) {
-        List<String> directives = new ArrayList<>();
-        List<Node> children = node.getChildren();
+    private Ir.Operand[] addVariables(int params) {
+        Ir.Operand[] operands = new Ir.Operand[ast.childCount(params)];
+        int index = 0;
 
-        Variable var = new Variable(children.get(0).value);
-        addVariableIfAbsent(var);
-
-        Node operation = children.get(1);
-        Node operand1 = operation.getChildren().get(0);
-        Node operand2 = operation.getChildren().get(1);
+        for (int node = ast.firstChild(params); node != Ast.NONE; node = ast.nextSibling(node)) {
+            String name = ast.value(node);
+            Variable var = new Variable(Data.DD, name, ast.symbol(node));
+            if (!scope.declare(var.symbol, var)) {
+                throw new RuntimeException(String.format("Parameter %s has already been declared", name));
+            }
 
-        directives.add(String.format("mov %s, %s",
-                var.name,
-                registers.containsKey(operand1.value)
-                        ? registers.get(operand1.value)
-                        : operand1.value
-        ));
+            if (!name.equals("**argv")) {
+                locals.add(var);
+            }
+            operands[index++] = Ir.Operand.variable(var.symbol, name);
+        }
 
-        directives.add(String.format("%s %s, %s",
-                MATH_COMMANDS.get(operation.type),
-                var.name,
-                registers.containsKey(operand2.value)
-                        ? registers.get(operand2.value)
-                        : operand2.value
-        ));
+        return operands;
+    }
 
-        directives.add("mov eax, " + var.name);
+    private void declaration(int node) {
+        int variable = ast.child(node, 0);
+        Variable var = new Variable(Data.DD, ast.value(variable), ast.symbol(variable));
+        if (scope.lookup(var.symbol) != null || !scope.declare(var.symbol, var)) {
+            throw new RuntimeException(String.format("Variable %s has already been declared", var.name));
+        }
 
-        return directives;
+        locals.add(var);
     }
 
-    private void addVariables(Node params) {
-        List<Node> nodes = params.getChildren();
-        for (Node node : nodes) {
-            String name = node.value;
-            if (!name.equals("argc") && !name.equals("**argv")) {
-                Variable var = new Variable(Data.DD, name);
-                addVariableIfAbsent(var);
-            }
+    private void initialization(int node) {
+        Ir.Operand target = variable(ast.child(node, 0));
+        int value = ast.child(node, 1);
+
+        if (ast.is(value, Token.FUNCTION)) {
+            function(value, target);
+        } else {
+            ir.emit(Ir.Op.MOVE, target, value(value));
         }
     }
 
-    private void declaration(Node node) {
-        String name = node.getChildren().get(0).value;
-        Variable var = new Variable(Data.DD, name);
-        addVariableIfAbsent(var);
-    }
+    private void function(int node, Ir.Operand target) {
+        String name = ast.value(node);
 
-    private List<String> initialization(Node node) {
-        List<String> directives = new ArrayList<>();
-        List<Node> children = node.getChildren();
-        String name = children.get(0).value;
-        Variable var = getVariable(name);
+        if (name.equals("printf")) {
+            if (target != null) {
+                throw new RuntimeException("Function printf doesn't return a value");
+            }
 
-        if (var == null) {
-            throw new RuntimeException(String.format("Variable %s hasn't been declared", name));
+            printf(node);
+            return;
         }
 
-        Node value = children.get(1);
+        Procedure procedure = procedures.lookup(ast.symbol(node));
+        if (procedure == null) {
+            throw new RuntimeException("Unknown procedure " + name);
+        }
 
-        if (value.type == Token.FUNCTION) {
-            directives.addAll(function(value));
-            directives.add(String.format("mov %s, eax", name));
+        int params = ast.child(node, 0);
+        Ir.Operand[] arguments = new Ir.Operand[ast.childCount(params)];
+        if (arguments.length != procedure.params.length) {
+            throw new RuntimeException(String.format("Procedure %s takes %d arguments", name, procedure.params.length));
+        }
 
-        } else {
-            directives.add(String.format("mov %s, %s", name, value.type == Token.CHARACTER ? "'" + value.value + "'" : value.value));
+        int index = 0;
+        for (int child = ast.firstChild(params); child != Ast.NONE; child = ast.nextSibling(child)) {
+            arguments[index++] = value(child);
         }
 
-        return directives;
+        ir.call(name, target, arguments);
     }
 
-    private List<String> function(Node node) {
-        List<String> push = new ArrayList<>();
-        String name = node.value;
-
-        if (procedures.stream().map(proc -> proc.name).noneMatch(name1 -> name1.equals(name))) {
-            throw new RuntimeException("Unknown procedure " + name);
+    private void printf(int node) {
+        int params = ast.child(node, 0);
+        int count = ast.childCount(params);
+        if (count == 0) {
+            throw new RuntimeException("Function printf mast take more than 0 arguments");
         }
 
-        for (Node child : node.getChildren().get(0).getChildren()) {
-            if (child.type == Token.ID && !variables.contains(new Variable(child.value))) {
-                throw new RuntimeException(String.format("Variable %s hasn't been declared", child.value));
-            }
-            push.add("push " + child.value);
+        int format = ast.child(params, 0);
+        if (!ast.is(format, Token.STRING)) {
+            throw new RuntimeException("Illegal arguments format for procedure MessageBoxA");
         }
 
-        push.add("call " + name);
+        String message = ast.value(format);
+        Constant constantMessage = message(message);
 
-        return push;
-    }
+        int arguments = 0;
+        String[] words = message.split("\\s");
 
-    private String printf(Node node) {
-        List<Node> params = node.getChild().getChildren();
-        try {
-            if (params.get(0).type != Token.STRING) {
-                throw new RuntimeException("Illegal arguments format for procedure MessageBoxA");
+        for (int i = 0; i < words.length; i++) {
+            switch (words[i]) {
+                case "%s":
+                case "%c":
+                case "%d":
+                    arguments++;
             }
+        }
 
-            String message = params.get(0).value;
-            List<Constant> messages = constants.stream()
-                    .filter(mess -> mess.name.matches("message\\d+"))
-                    .toList();
+        if (count != arguments + 1) {
+            throw new RuntimeException("Illegal arguments count for function printf");
+        }
 
+        Ir.Operand[] operands = new Ir.Operand[count];
+        operands[0] = Ir.Operand.constant(constantMessage.name);
+        int index = 1;
+        for (int param = ast.nextSibling(format); param != Ast.NONE; param = ast.nextSibling(param)) {
+            operands[index++] = value(param);
+        }
 
-            int messageNumber = messages.isEmpty() ?
-                    1 :
-                    messages.stream()
-                            .mapToInt(mess -> Integer.parseInt(mess.name.substring(7)))
-                            .max()
-                            .getAsInt() + 1;
+        ir.print(operands);
+    }
 
-            Constant constantMessage = new Constant(Data.DB, "message" + messageNumber, message, true);
-            constants.add(constantMessage);
+    private Ir.Operand variable(int node) {
+        Variable var = resolve(node);
+        if (var == null) {
+            throw new RuntimeException("Variable was expected instead of " + ast.describe(node));
+        }
 
-            int arguments = 0;
-            String[] words = params.get(0).value.split("\\s");
+        return Ir.Operand.variable(var.symbol, var.name);
+    }
 
-            for (int i = 0; i < words.length; i++) {
-                switch (words[i]) {
-                    case "%s":
-                    case "%c":
-                    case "%d":
-                        arguments++;
-                }
-            }
+    private Ir.Operand value(int node) {
+        Variable var = resolve(node);
+        if (var != null) {
+            return var.operand();
+        }
 
-            if (params.size() != arguments + 1) {
-                throw new RuntimeException("Illegal arguments count for function printf");
-            }
+        String value = ast.value(node);
+        Token type = ast.type(node);
 
-            String paramsText = params.size() - 1 <= 0
-                    ? constantMessage.name
-                    : constantMessage.name + ", " +
-                        params.subList(1, params.size())
-                            .stream()
-                            .map(param -> {
-                                if (param.type == null) {
-                                    return param.value;
-                                } else {
-                                    return switch (param.type) {
-                                        case STRING -> "\"" + param.value + "\"";
-                                        case CHARACTER -> "'" + param.value + "'";
-                                        default -> param.value;
-                                    };
-                                }
-                            })
-                            .collect(Collectors.joining(", "));
-
-            return String.format("invoke crt_printf, ADDR %s", paramsText);
-
-        } catch (IndexOutOfBoundsException ex) {
-            throw new RuntimeException("Function printf mast take more than 0 arguments");
+        if (type == Token.CHARACTER) {
+            return Ir.Operand.immediate("'" + value + "'");
+        } else if (type == Token.STRING) {
+            return Ir.Operand.immediate("\"" + value + "\"");
         }
+
+        return Ir.Operand.immediate(value);
     }
 
     private void initConfiguration() {
-        List<String> configs = new ArrayList<>() {{
-           add(".586");
-           add(".model flat, c");
-           add("option casemap:none");
-           add("include masm32\\include\\user32.inc");
-           add("include masm32\\include\\kernel32.inc");
-           add("include masm32\\include\\windows.inc");
-           add("include masm32\\include\\msvcrt.inc\n");
-           add("includelib masm32\\lib\\kernel32.lib");
-           add("includelib masm32\\lib\\user32.lib");
-           add("includelib masm32\\lib\\msvcrt.lib\n");
-           add(".const");
-           add(".data");
-           add(".code");
-        }};
-
-        program.addAll(configs);
+        emitter.header(".586");
+        emitter.header(".model flat, c");
+        emitter.header("option casemap:none");
+        emitter.header("include masm32\\include\\user32.inc");
+        emitter.header("include masm32\\include\\kernel32.inc");
+        emitter.header("include masm32\\include\\windows.inc");
+        emitter.header("include masm32\\include\\msvcrt.inc\n");
+        emitter.header("includelib masm32\\lib\\kernel32.lib");
+        emitter.header("includelib masm32\\lib\\user32.lib");
+        emitter.header("includelib masm32\\lib\\msvcrt.lib\n");
     }
 
     private void constants() {
-        List<String> constants = new ArrayList<>();
-        for (Constant constant : this.constants) {
-            constants.add(String.format("\t%s %s %s, 0",
-                    constant.name,
-                    String.valueOf(constant.type).toLowerCase(),
-                    constant.isArray ? "\"" + constant.value + "\"" : constant.value));
+        for (Constant constant : this.constants.values()) {
+            emitter.constant("\t" + constant.name + " " + String.valueOf(constant.type).toLowerCase() + " " +
+                    (constant.isArray ? "\"" + constant.value + "\"" : constant.value) + ", 0");
         }
-        constants.add("\n");
-
-        int insertIndex = IntStream.range(0, program.size())
-                .filter(index -> program.get(index).equals(".const"))
-                .findAny()
-                .getAsInt() + 1;
-
-        program.addAll(insertIndex, constants);
     }
 
     private void variables() {
-        List<String> variables = new ArrayList<>();
         for (Variable variable : this.variables) {
             if (variable.type != null) {
-                variables.add(String.format("\t%s %s ?", variable.name, variable.type));
+                emitter.data("\t" + variable.name + " " + variable.type + " ?");
             }
         }
-        variables.add("\n");
-
-        int insertIndex = IntStream.range(0, program.size())
-                .filter(index -> program.get(index).equals(".data"))
-                .findAny()
-                .getAsInt()
-                + 1;
-
-        program.addAll(insertIndex, variables);
     }
 
-    public String getProgram() {
-        return String.join("\n", program);
+    private Variable getVariable(int symbol) {
+        return symbol >= 0 && symbol < variablesBySymbol.length ? variablesBySymbol[symbol] : null;
     }
 
-    //TODO: знадобиться при подальшому вдосконаленні компілятора
-/*    private Data getDataType(Node node) {
-        long value;
-        if (node.type == Token.DECIMAL) {
-            value = Long.parseLong(node.value);
-        } else if (node.type == Token.OCTAL) {
-            value = Long.parseLong(node.value, 8);
-        } else if (node.type == Token.HEXADEMICAL) {
-            value = Long.parseLong(node.value, 16);
-        } else {
-            value = node.value.charAt(0);
+    private Variable resolve(int node) {
+        int symbol = ast.symbol(node);
+        if (symbol == Symbols.NONE) {
+            return null;
         }
 
-        for (Data type : Data.values()) {
-            if (Math.pow(2, 8 * type.size) >= value) {
-                return type;
-            }
+        Variable var = scope.lookup(symbol);
+        if (var == null) {
+            throw new RuntimeException(String.format("Variable %s hasn't been declared", ast.value(node)));
         }
 
-        throw new RuntimeException(String.format("Value %d is too large", value));
-    }*/
-
-    private Variable getVariable(String name) {
-        Optional<Variable> optVar = variables.stream().filter(var -> var.name.equals(name)).findAny();
-        return optVar.orElse(null);
+        return var;
     }
 
-    private Constant getConstant(String name) {
-        Optional<Constant> optConst = constants.stream().filter(cons -> cons.name.equals(name)).findAny();
-        return optConst.orElse(null);
-    }
-
-    private void addVariableIfAbsent(Variable var) {
-        if (variables.stream().noneMatch(var1 -> var1.equals(var))) {
-            variables.add(var);
+    private void addProcedure(int symbol, Procedure procedure) {
+        if (!procedures.declare(symbol, procedure)) {
+            throw new RuntimeException(String.format("Procedure %s has already been declared", procedure.name));
         }
     }
 
-    private void addConstantIfAbsent(Constant constant) {
-        if (constants.stream().noneMatch(const1 -> const1.equals(constant))) {
-            constants.add(constant);
+    private Constant message(String value) {
+        Constant message = messages.get(value);
+        if (message == null) {
+            message = new Constant(Data.DB, "message" + ++messageCount, value, true);
+            messages.put(value, message);
+            addConstantIfAbsent(message);
         }
+
+        return message;
     }
 
-    private int jumpCount(Node node) {
-        if (JUMP_COMMANDS.containsKey(node.type) || node.type == Token.ELSE) {
-            return 1;
-        }
+    private void addVariableIfAbsent(Variable var) {
+        if (getVariable(var.symbol) == null) {
+            if (var.symbol >= variablesBySymbol.length) {
+                variablesBySymbol = Arrays.copyOf(variablesBySymbol, symbols.size());
+            }
 
-        int jump = 0;
-        for (Node child : node.getChildren()) {
-            jump += jumpCount(child);
+            variablesBySymbol[var.symbol] = var;
+            variables.add(var);
         }
+    }
 
-        return jump;
+    private void addConstantIfAbsent(Constant constant) {
+        constants.putIfAbsent(constant.name, constant);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,356 @@
+package com.kpi.fict;
+
+import java.util.*;
+
+public class ConstantFolder {
+
+    private final Ast ast;
+    private int[] numbers = new int[0];
+    private final BitSet known = new BitSet();
+
+    public ConstantFolder(Ast ast) {
+        this.ast = ast;
+    }
+
+    public void fold(int procedure) {
+        statements(procedure, 2, new HashMap<>());
+    }
+
+    private boolean statements(int parent, int skip, Map<Integer, Integer> constants) {
+        List<Integer> children = new ArrayList<>();
+        Map<Integer, Integer> shadowed = new HashMap<>();
+        boolean returns = false;
+
+        int child = ast.firstChild(parent);
+        for (int i = 0; i < skip; i++) {
+            children.add(child);
+            child = ast.nextSibling(child);
+        }
+
+        while (child != Ast.NONE) {
+            int next = ast.nextSibling(child);
+
+            switch (ast.type(child)) {
+                case DECLARATION -> {
+                    int symbol = ast.symbol(ast.child(child, 0));
+                    shadowed.putIfAbsent(symbol, constants.getOrDefault(symbol, Ast.NONE));
+                    constants.remove(symbol);
+                    children.add(child);
+                }
+                case INITIALIZATION, CALCULATION -> {
+                    assignment(child, constants);
+                    children.add(child);
+                }
+                case FUNCTION -> {
+                    arguments(child, constants);
+                    children.add(child);
+                }
+                case RETURN -> {
+                    if (ast.firstChild(child) != Ast.NONE) {
+                        expression(ast.firstChild(child), constants);
+                    }
+                    returns = true;
+                    children.add(child);
+                }
+                case IF -> {
+                    List<Integer> arms = new ArrayList<>();
+                    arms.add(child);
+                    while (next != Ast.NONE && (ast.is(next, Token.ELSE_IF) || ast.is(next, Token.ELSE))) {
+                        arms.add(next);
+                        next = ast.nextSibling(next);
+                    }
+
+                    returns |= conditional(arms, children, constants);
+                }
+                case BLOCK -> {
+                    returns |= statements(child, 0, constants);
+                    children.add(child);
+                }
+                default -> children.add(child);
+            }
+
+            child = next;
+        }
+
+        for (Map.Entry<Integer, Integer> entry : shadowed.entrySet()) {
+            if (entry.getValue() == Ast.NONE) {
+                constants.remove(entry.getKey());
+            } else {
+                constants.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        ast.setChildren(parent, children.stream().mapToInt(Integer::intValue).toArray());
+        return returns;
+    }
+
+    private boolean conditional(List<Integer> arms, List<Integer> children, Map<Integer, Integer> constants) {
+        List<Integer> kept = new ArrayList<>();
+        int otherwise = Ast.NONE;
+
+        for (int arm : arms) {
+            if (ast.is(arm, Token.ELSE)) {
+                otherwise = arm;
+                break;
+            }
+
+            Boolean value = condition(ast.firstChild(arm), constants);
+            if (value == null) {
+                kept.add(arm);
+            } else if (value) {
+                int[] body = new int[ast.childCount(arm) - 1];
+                int index = 0;
+                for (int child = ast.nextSibling(ast.firstChild(arm)); child != Ast.NONE; child = ast.nextSibling(child)) {
+                    body[index++] = child;
+                }
+
+                ast.setChildren(arm, body);
+                otherwise = arm;
+                break;
+            }
+        }
+
+        Map<Integer, Integer> merged = null;
+        boolean returns = true;
+
+        for (int arm : kept) {
+            Map<Integer, Integer> branch = new HashMap<>(constants);
+            if (!statements(arm, 1, branch)) {
+                merged = merge(merged, branch);
+                returns = false;
+            }
+        }
+
+        if (otherwise != Ast.NONE) {
+            Map<Integer, Integer> branch = new HashMap<>(constants);
+            if (!statements(otherwise, 0, branch)) {
+                merged = merge(merged, branch);
+                returns = false;
+            }
+        } else {
+            merged = merge(merged, constants);
+            returns = false;
+        }
+
+        constants.clear();
+        if (merged != null) {
+            constants.putAll(merged);
+        }
+
+        for (int i = 0; i < kept.size(); i++) {
+            ast.setType(kept.get(i), i == 0 ? Token.IF : Token.ELSE_IF);
+            children.add(kept.get(i));
+        }
+
+        if (otherwise != Ast.NONE) {
+            ast.setType(otherwise, kept.isEmpty() ? Token.BLOCK : Token.ELSE);
+            children.add(otherwise);
+        }
+
+        return returns;
+    }
+
+    private Map<Integer, Integer> merge(Map<Integer, Integer> merged, Map<Integer, Integer> branch) {
+        if (merged == null) {
+            return new HashMap<>(branch);
+        }
+
+        merged.entrySet().removeIf(entry -> !branch.containsKey(entry.getKey())
+                || !number(branch.get(entry.getKey())).equals(number(entry.getValue())));
+        return merged;
+    }
+
+    private Boolean condition(int node, Map<Integer, Integer> constants) {
+        if (ast.is(node, Token.AND) || ast.is(node, Token.OR)) {
+            boolean and = ast.is(node, Token.AND);
+            List<Integer> kept = new ArrayList<>();
+
+            for (int child = ast.firstChild(node); child != Ast.NONE; child = ast.nextSibling(child)) {
+                Boolean value = condition(child, constants);
+                if (value == null) {
+                    kept.add(child);
+                } else if (value != and) {
+                    return value;
+                }
+            }
+
+            if (kept.isEmpty()) {
+                return and;
+            }
+
+            if (kept.size() == 1) {
+                ast.replace(node, kept.get(0));
+            } else {
+                ast.setChildren(node, kept.stream().mapToInt(Integer::intValue).toArray());
+            }
+            return null;
+        }
+
+        Integer left = number(expression(ast.child(node, 0), constants));
+        Integer right = number(expression(ast.child(node, 1), constants));
+        if (left == null || right == null) {
+            return null;
+        }
+
+        return switch (ast.type(node)) {
+            case EQUAL -> left.intValue() == right.intValue();
+            case NOT_EQUAL -> left.intValue() != right.intValue();
+            case LESS -> left < right;
+            case MORE -> left > right;
+            case LESS_EQUAL -> left <= right;
+            case MORE_EQUAL -> left >= right;
+            default -> throw new RuntimeException("Illegal condition " + ast.describe(node));
+        };
+    }
+
+    private void assignment(int node, Map<Integer, Integer> constants) {
+        int symbol = ast.symbol(ast.child(node, 0));
+        int value = ast.child(node, 1);
+
+        if (ast.is(value, Token.FUNCTION)) {
+            arguments(value, constants);
+            constants.remove(symbol);
+            return;
+        }
+
+        int literal = expression(value, constants);
+        if (literal != Ast.NONE) {
+            constants.put(symbol, literal);
+        } else {
+            constants.remove(symbol);
+        }
+    }
+
+    private void arguments(int node, Map<Integer, Integer> constants) {
+        for (int child = ast.firstChild(ast.child(node, 0)); child != Ast.NONE; child = ast.nextSibling(child)) {
+            expression(child, constants);
+        }
+    }
+
+    private int expression(int node, Map<Integer, Integer> constants) {
+        if (ast.is(node, Token.PLUS) || ast.is(node, Token.MINUS)) {
+            return operation(node, constants);
+        }
+
+        if (ast.symbol(node) != Symbols.NONE) {
+            Integer literal = constants.get(ast.symbol(node));
+            if (literal == null) {
+                return Ast.NONE;
+            }
+
+            ast.replace(node, literal);
+            remember(node, numbers[literal]);
+        }
+
+        return number(node) == null ? Ast.NONE : node;
+    }
+
+    private int operation(int node, Map<Integer, Integer> constants) {
+        int left = ast.child(node, 0);
+        int right = ast.child(node, 1);
+        Integer operand1 = number(expression(left, constants));
+        Integer operand2 = number(expression(right, constants));
+        int sign = ast.is(node, Token.PLUS) ? 1 : -1;
+
+        if (operand1 != null && operand2 != null) {
+            return literal(node, operand1 + sign * operand2);
+        }
+
+        if (operand2 == null) {
+            if (operand1 != null && operand1 == 0 && sign == 1) {
+                ast.replace(node, right);
+            }
+            return Ast.NONE;
+        }
+
+        int rest = left;
+        int offset = sign * operand2;
+        if (ast.is(left, Token.PLUS) || ast.is(left, Token.MINUS)) {
+            int inner1 = ast.child(left, 0);
+            int inner2 = ast.child(left, 1);
+            int innerSign = ast.is(left, Token.PLUS) ? 1 : -1;
+
+            if (number(inner2) != null) {
+                rest = inner1;
+                offset += innerSign * number(inner2);
+            } else if (number(inner1) != null && innerSign == 1) {
+                rest = inner2;
+                offset += number(inner1);
+            }
+        }
+
+        if (offset == 0) {
+            ast.replace(node, rest);
+        } else {
+            boolean subtract = offset < 0 && offset != Integer.MIN_VALUE;
+            ast.setType(node, subtract ? Token.MINUS : Token.PLUS);
+            ast.setChildren(node, new int[] {rest, literal(right, subtract ? -offset : offset)});
+        }
+
+        return Ast.NONE;
+    }
+
+    private int literal(int node, int value) {
+        String text = String.valueOf(value);
+        if (!ast.is(node, Token.DECIMAL) || !text.equals(ast.value(node))) {
+            ast.setType(node, Token.DECIMAL);
+            ast.setValue(node, text);
+            ast.setSymbol(node, Symbols.NONE);
+            ast.setChildren(node, new int[0]);
+        }
+
+        remember(node, value);
+        return node;
+    }
+
+    private void remember(int node, int value) {
+        if (node >= numbers.length) {
+            numbers = Arrays.copyOf(numbers, Math.max(ast.size(), node + 1));
+        }
+
+        numbers[node] = value;
+        known.set(node);
+    }
+
+    private Integer number(int node) {
+        if (node == Ast.NONE) {
+            return null;
+        }
+
+        if (known.get(node)) {
+            return numbers[node];
+        }
+
+        Token type = ast.type(node);
+        String text = ast.value(node);
+        if (type == Token.CHARACTER) {
+            if (text.length() != 1) {
+                return null;
+            }
+
+            remember(node, text.charAt(0));
+            return (int) text.charAt(0);
+        }
+
+        long value;
+        try {
+            if (type == Token.DECIMAL) {
+                value = Long.parseLong(text);
+            } else if (type == Token.OCTAL) {
+                value = Long.parseLong(text, 8);
+            } else if (type == Token.HEXADEMICAL) {
+                value = Long.parseLong(text.substring(2), 16);
+            } else {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(String.format("Value %s is too large", text));
+        }
+
+        if (value > 0xFFFFFFFFL || value < Integer.MIN_VALUE) {
+            throw new RuntimeException(String.format("Value %s is too large", text));
+        }
+
+        return literal(node, (int) value);
+    }
+}
@@ -0,0 +1,207 @@
+package com.kpi.fict;
+
+import java.util.*;
+
+public class ControlFlow {
+
+    private final Ir ir;
+    private final Map<Ir.Block, List<Ir.Block>> predecessors = new HashMap<>();
+    private int[] variables;
+
+    public ControlFlow(Ir ir) {
+        this.ir = ir;
+    }
+
+    public void optimize() {
+        for (Ir.Block block : ir.blocks()) {
+            if (block.terminator() == null) {
+                throw new RuntimeException("Block " + block + " of " + ir.name() + " has no terminator");
+            }
+        }
+
+        sweep();
+        thread();
+        List<Ir.Block> reachable = reachable();
+
+        for (Ir.Block block : reachable) {
+            for (Ir.Block successor : block.terminator().successors) {
+                predecessors.computeIfAbsent(successor, key -> new ArrayList<>()).add(block);
+            }
+        }
+
+        ir.reorder(layout(reachable));
+        sweep();
+    }
+
+    private void thread() {
+        for (Ir.Block block : ir.blocks()) {
+            Ir.Instruction terminator = block.terminator();
+            Ir.Block[] successors = terminator.successors;
+            for (int i = 0; i < successors.length; i++) {
+                successors[i] = forward(successors[i]);
+            }
+
+            if (terminator.op == Ir.Op.BRANCH && successors[0] == successors[1]) {
+                block.instructions.set(block.instructions.size() - 1, new Ir.Instruction(Ir.Op.JUMP, null,
+                        new Ir.Operand[0], null, null, new Ir.Block[] {successors[0]}));
+            }
+        }
+    }
+
+    private Ir.Block forward(Ir.Block block) {
+        for (int steps = 0; steps < ir.blocks().size(); steps++) {
+            if (block.instructions.size() != 1 || block.terminator().op != Ir.Op.JUMP) {
+                return block;
+            }
+
+            block = block.terminator().successors[0];
+        }
+
+        return block;
+    }
+
+    private List<Ir.Block> reachable() {
+        Set<Ir.Block> visited = new HashSet<>();
+        Deque<Ir.Block> stack = new ArrayDeque<>();
+        stack.push(ir.blocks().get(0));
+
+        while (!stack.isEmpty()) {
+            Ir.Block block = stack.pop();
+            if (visited.add(block)) {
+                for (Ir.Block successor : block.terminator().successors) {
+                    stack.push(successor);
+                }
+            }
+        }
+
+        List<Ir.Block> reachable = new ArrayList<>(visited.size());
+        for (Ir.Block block : ir.blocks()) {
+            if (visited.contains(block)) {
+                reachable.add(block);
+            }
+        }
+
+        return reachable;
+    }
+
+    private List<Ir.Block> layout(List<Ir.Block> reachable) {
+        List<Ir.Block> layout = new ArrayList<>(reachable.size());
+        Set<Ir.Block> placed = new HashSet<>();
+
+        for (Ir.Block start : reachable) {
+            for (Ir.Block block = start; block != null && placed.add(block); block = fallThrough(block, placed)) {
+                layout.add(block);
+            }
+        }
+
+        return layout;
+    }
+
+    private Ir.Block fallThrough(Ir.Block block, Set<Ir.Block> placed) {
+        Ir.Instruction terminator = block.terminator();
+        if (terminator.op == Ir.Op.RETURN) {
+            return null;
+        }
+
+        for (Ir.Block successor : terminator.successors) {
+            if (!placed.contains(successor) && placed.containsAll(predecessors.get(successor))) {
+                return successor;
+            }
+        }
+
+        return null;
+    }
+
+    private void sweep() {
+        if (variables == null) {
+            variables();
+        }
+
+        List<Ir.Block> blocks = ir.blocks();
+        Map<Ir.Block, BitSet> live = new HashMap<>();
+
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                BitSet in = transfer(blocks.get(i), live, false);
+                changed |= !in.equals(live.put(blocks.get(i), in));
+            }
+        }
+
+        for (Ir.Block block : blocks) {
+            transfer(block, live, true);
+        }
+    }
+
+    private BitSet transfer(Ir.Block block, Map<Ir.Block, BitSet> live, boolean sweep) {
+        BitSet alive = new BitSet();
+        for (Ir.Block successor : block.terminator().successors) {
+            BitSet in = live.get(successor);
+            if (in != null) {
+                alive.or(in);
+            }
+        }
+
+        List<Ir.Instruction> kept = new ArrayList<>(block.instructions.size());
+        for (int i = block.instructions.size() - 1; i >= 0; i--) {
+            Ir.Instruction instruction = block.instructions.get(i);
+
+            if (instruction.target != null) {
+                boolean used = alive.get(key(instruction.target));
+                alive.clear(key(instruction.target));
+
+                if (!used && instruction.op != Ir.Op.CALL) {
+                    continue;
+                }
+                if (!used) {
+                    instruction = new Ir.Instruction(Ir.Op.CALL, null, instruction.operands, null,
+                            instruction.callee, instruction.successors);
+                }
+            }
+
+            for (Ir.Operand operand : instruction.operands) {
+                if (operand.is(Ir.Kind.VARIABLE) || operand.is(Ir.Kind.TEMP)) {
+                    alive.set(key(operand));
+                }
+            }
+            kept.add(instruction);
+        }
+
+        if (sweep) {
+            Collections.reverse(kept);
+            block.instructions.clear();
+            block.instructions.addAll(kept);
+        }
+
+        return alive;
+    }
+
+    private void variables() {
+        int[] symbols = new int[16];
+        int count = 0;
+
+        for (Ir.Block block : ir.blocks()) {
+            for (Ir.Instruction instruction : block.instructions) {
+                for (Ir.Operand operand : instruction.operands) {
+                    if (operand.is(Ir.Kind.VARIABLE)) {
+                        if (count == symbols.length) {
+                            symbols = Arrays.copyOf(symbols, count * 2);
+                        }
+                        symbols[count++] = operand.id;
+                    }
+                }
+            }
+        }
+
+        variables = Arrays.stream(symbols, 0, count).sorted().distinct().toArray();
+    }
+
+    private int key(Ir.Operand operand) {
+        if (operand.is(Ir.Kind.TEMP)) {
+            return variables.length + operand.id;
+        }
+
+        int index = Arrays.binarySearch(variables, operand.id);
+        return index < 0 ? variables.length + ir.temps() : index;
+    }
+}
@@ -0,0 +1,149 @@
+package com.kpi.fict;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public class Emitter implements AutoCloseable {
+
+    public static class Listing {
+        private final List<String> lines = new ArrayList<>();
+
+        public void add(String line) {
+            lines.add(line);
+        }
+
+        private List<String> lines() {
+            return lines;
+        }
+    }
+
+    private final WritableByteChannel target;
+    private final Peephole peephole;
+    private final List<String> header = new ArrayList<>();
+    private final List<String> constants = new ArrayList<>();
+    private final List<String> data = new ArrayList<>();
+    private final Deque<long[]> code = new ArrayDeque<>();
+    private FileChannel spill;
+    private Writer spillWriter;
+
+    public Emitter(WritableByteChannel target) {
+        this(target, null);
+    }
+
+    public Emitter(WritableByteChannel target, Peephole peephole) {
+        this.target = target;
+        this.peephole = peephole;
+    }
+
+    public void header(String line) {
+        header.add(line);
+    }
+
+    public void constant(String line) {
+        constants.add(line);
+    }
+
+    public void data(String line) {
+        data.add(line);
+    }
+
+    public void prependProcedure(Listing listing) {
+        code.addFirst(spill(listing));
+    }
+
+    public void appendProcedure(Listing listing) {
+        code.addLast(spill(listing));
+    }
+
+    public void finish() {
+        try {
+            Writer writer = writer(target);
+
+            for (String line : header) {
+                writer.write(line);
+                writer.write('\n');
+            }
+
+            writer.write(".const\n");
+            for (String line : constants) {
+                writer.write(line);
+                writer.write('\n');
+            }
+
+            writer.write("\n\n.data\n");
+            for (String line : data) {
+                writer.write(line);
+                writer.write('\n');
+            }
+
+            writer.write("\n\n.code");
+            writer.flush();
+
+            for (long[] block : code) {
+                for (long offset = block[0], end = block[0] + block[1]; offset < end; ) {
+                    offset += spill.transferTo(offset, end - offset, target);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (spill == null) {
+            return;
+        }
+
+        try {
+            spill.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            spill = null;
+        }
+    }
+
+    private long[] spill(Listing listing) {
+        try {
+            if (spill == null) {
+                spill = FileChannel.open(Files.createTempFile("listing", ".asm"),
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+                spillWriter = writer(spill);
+            }
+
+            List<String> lines = peephole == null ? listing.lines() : peephole.optimize(listing.lines());
+
+            long offset = spill.position();
+            spillWriter.write('\n');
+            for (String line : lines) {
+                spillWriter.write(line);
+                spillWriter.write('\n');
+            }
+            spillWriter.write('\n');
+            spillWriter.flush();
+
+            return new long[] {offset, spill.position() - offset};
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Writer writer(WritableByteChannel channel) {
+        return new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,232 @@
+package com.kpi.fict;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Ir {
+
+    public enum Op {
+        MOVE, ADD, SUB, BRANCH, JUMP, CALL, PRINT, RETURN
+    }
+
+    public enum Kind {
+        TEMP, VARIABLE, IMMEDIATE, CONSTANT
+    }
+
+    public static class Operand {
+        public final Kind kind;
+        public final int id;
+        public final String text;
+
+        private Operand(Kind kind, int id, String text) {
+            this.kind = kind;
+            this.id = id;
+            this.text = text;
+        }
+
+        public static Operand variable(int symbol, String name) {
+            return new Operand(Kind.VARIABLE, symbol, name);
+        }
+
+        public static Operand immediate(String text) {
+            return new Operand(Kind.IMMEDIATE, Symbols.NONE, text);
+        }
+
+        public static Operand constant(String name) {
+            return new Operand(Kind.CONSTANT, Symbols.NONE, name);
+        }
+
+        public boolean is(Kind kind) {
+            return this.kind == kind;
+        }
+
+        public boolean same(Operand other) {
+            return other != null && kind == other.kind && (kind == Kind.IMMEDIATE || kind == Kind.CONSTANT
+                    ? text.equals(other.text)
+                    : id == other.id);
+        }
+
+        @Override
+        public String toString() {
+            return kind == Kind.TEMP ? "%" + text : text;
+        }
+    }
+
+    public static class Instruction {
+        public final Op op;
+        public final Operand target;
+        public final Operand[] operands;
+        public final Token condition;
+        public final String callee;
+        public final Block[] successors;
+
+        public Instruction(Op op, Operand target, Operand[] operands, Token condition, String callee, Block[] successors) {
+            this.op = op;
+            this.target = target;
+            this.operands = operands;
+            this.condition = condition;
+            this.callee = callee;
+            this.successors = successors;
+        }
+
+        public boolean isTerminator() {
+            return op == Op.BRANCH || op == Op.JUMP || op == Op.RETURN;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            if (target != null) {
+                text.append(target).append(" = ");
+            }
+
+            text.append(op.name().toLowerCase());
+            if (condition != null) {
+                text.append('.').append(condition.name().toLowerCase());
+            }
+            if (callee != null) {
+                text.append(' ').append(callee);
+            }
+
+            for (int i = 0; i < operands.length; i++) {
+                text.append(i == 0 ? " " : ", ").append(operands[i]);
+            }
+
+            for (int i = 0; i < successors.length; i++) {
+                text.append(i == 0 ? " -> " : ", ").append(successors[i]);
+            }
+
+            return text.toString();
+        }
+    }
+
+    public static class Block {
+        public final List<Instruction> instructions = new ArrayList<>();
+        private int id = -1;
+
+        public int id() {
+            return id;
+        }
+
+        public Instruction terminator() {
+            if (instructions.isEmpty()) {
+                return null;
+            }
+
+            Instruction last = instructions.get(instructions.size() - 1);
+            return last.isTerminator() ? last : null;
+        }
+
+        @Override
+        public String toString() {
+            return "b" + id;
+        }
+    }
+
+    private final String name;
+    private final Operand[] params;
+    private final List<Block> blocks = new ArrayList<>();
+    private int temps;
+    private Block current;
+
+    public Ir(String name, Operand[] params) {
+        this.name = name;
+        this.params = params;
+        place(new Block());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Operand[] params() {
+        return params;
+    }
+
+    public List<Block> blocks() {
+        return blocks;
+    }
+
+    public int temps() {
+        return temps;
+    }
+
+    public Operand temp() {
+        int temp = temps++;
+        return new Operand(Kind.TEMP, temp, "t" + temp);
+    }
+
+    public Block block() {
+        return new Block();
+    }
+
+    public void place(Block block) {
+        if (block.id != -1) {
+            throw new RuntimeException("Block " + block + " has already been placed");
+        }
+
+        block.id = blocks.size();
+        blocks.add(block);
+        current = block;
+    }
+
+    public void reorder(List<Block> order) {
+        blocks.clear();
+        blocks.addAll(order);
+    }
+
+    public boolean isTerminated() {
+        return current.terminator() != null;
+    }
+
+    public void emit(Op op, Operand target, Operand... operands) {
+        add(new Instruction(op, target, operands, null, null, new Block[0]));
+    }
+
+    public void call(String callee, Operand target, Operand... arguments) {
+        add(new Instruction(Op.CALL, target, arguments, null, callee, new Block[0]));
+    }
+
+    public void print(Operand... arguments) {
+        add(new Instruction(Op.PRINT, null, arguments, null, null, new Block[0]));
+    }
+
+    public void branch(Token condition, Operand operand1, Operand operand2, Block ifTrue, Block ifFalse) {
+        add(new Instruction(Op.BRANCH, null, new Operand[] {operand1, operand2}, condition, null, new Block[] {ifTrue, ifFalse}));
+    }
+
+    public void jump(Block target) {
+        if (!isTerminated()) {
+            add(new Instruction(Op.JUMP, null, new Operand[0], null, null, new Block[] {target}));
+        }
+    }
+
+    public void ret(Operand value) {
+        add(new Instruction(Op.RETURN, null, value == null ? new Operand[0] : new Operand[] {value}, null, null, new Block[0]));
+    }
+
+    private void add(Instruction instruction) {
+        if (isTerminated()) {
+            place(new Block());
+        }
+
+        current.instructions.add(instruction);
+    }
+
+    public String dump() {
+        StringBuilder text = new StringBuilder("procedure ").append(name).append('(');
+        for (int i = 0; i < params.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(params[i]);
+        }
+        text.append(")\n");
+
+        for (Block block : blocks) {
+            text.append(block).append(":\n");
+            for (Instruction instruction : block.instructions) {
+                text.append("    ").append(instruction).append('\n');
+            }
+        }
+
+        return text.toString();
+    }
+}
@@ -1,9 +1,10 @@
 package com.kpi.fict;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-public class Lexer {
+public class Lexer implements TokenCursor {
     public static final Map<Character, Token> SYMBOLS = new HashMap<>() {{
        put('{', Token.LPAR);
        put('}', Token.RPAR);
@@ -38,200 +39,428 @@ public class Lexer {
        put("||", Token.OR);
     }};
 
-    private final String program;
-    private final char[] chars;
+    private static final int TABLE_SIZE = 128;
+    private static final boolean[] SKIPPED = new boolean[TABLE_SIZE];
+    private static final Token[] OPERATORS = new Token[TABLE_SIZE];
+    private static final Token[] PAIRS = new Token[TABLE_SIZE * TABLE_SIZE];
+
+    private static final int C_OTHER = 0, C_ZERO = 1, C_OCTAL = 2, C_DIGIT = 3, C_X = 4,
+            C_HEX = 5, C_LETTER = 6, C_STAR = 7, C_WORD = 8, CLASS_COUNT = 9;
+    private static final int S_STOP = -1, S_START = 0, S_ZERO = 1, S_OCTAL = 2, S_DECIMAL = 3,
+            S_HEX_PREFIX = 4, S_HEX = 5, S_WORD = 6, S_INVALID = 7, STATE_COUNT = 8;
+
+    private static final byte[] CLASSES = new byte[TABLE_SIZE];
+    private static final byte[][] TRANSITIONS = new byte[STATE_COUNT][CLASS_COUNT];
+    private static final Token[] ACCEPTS = new Token[STATE_COUNT];
+
+    private static final String UNSIGNED = "unsigned";
+    private static final String UNSIGNED_CHAR = "unsigned char";
+    private static final int KEYWORD_TABLE_SIZE = 16;
+    private static final String[] KEYWORD_TEXTS = new String[KEYWORD_TABLE_SIZE];
+    private static final Token[] KEYWORD_TOKENS = new Token[KEYWORD_TABLE_SIZE];
+    private static final int KEYWORD_SEED;
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            SKIPPED[c] = String.valueOf(c).isBlank() || c == '"' || c == '\'';
+        }
+
+        SYMBOLS.forEach((symbol, token) -> OPERATORS[symbol] = token);
+        LOGICAL.forEach((operator, token) -> {
+            if (operator.length() == 1) {
+                OPERATORS[operator.charAt(0)] = token;
+            } else {
+                PAIRS[pairIndex(operator.charAt(0), operator.charAt(1))] = token;
+            }
+        });
+
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            CLASSES[c] = (byte) charClass(c);
+        }
+
+        for (byte[] transitions : TRANSITIONS) {
+            Arrays.fill(transitions, (byte) S_STOP);
+        }
+        transition(S_START, S_ZERO, C_ZERO);
+        transition(S_START, S_DECIMAL, C_OCTAL, C_DIGIT);
+        transition(S_START, S_WORD, C_X, C_HEX, C_LETTER, C_STAR);
+        transition(S_ZERO, S_OCTAL, C_ZERO, C_OCTAL);
+        transition(S_ZERO, S_DECIMAL, C_DIGIT);
+        transition(S_ZERO, S_HEX_PREFIX, C_X);
+        transition(S_ZERO, S_INVALID, C_HEX, C_LETTER, C_STAR, C_WORD);
+        transition(S_OCTAL, S_OCTAL, C_ZERO, C_OCTAL);
+        transition(S_OCTAL, S_DECIMAL, C_DIGIT);
+        transition(S_OCTAL, S_INVALID, C_X, C_HEX, C_LETTER, C_STAR, C_WORD);
+        transition(S_DECIMAL, S_DECIMAL, C_ZERO, C_OCTAL, C_DIGIT);
+        transition(S_DECIMAL, S_INVALID, C_X, C_HEX, C_LETTER, C_STAR, C_WORD);
+        transition(S_HEX_PREFIX, S_HEX, C_ZERO, C_OCTAL, C_DIGIT, C_HEX);
+        transition(S_HEX_PREFIX, S_INVALID, C_X, C_LETTER, C_STAR, C_WORD);
+        transition(S_HEX, S_HEX, C_ZERO, C_OCTAL, C_DIGIT, C_HEX);
+        transition(S_HEX, S_INVALID, C_X, C_LETTER, C_STAR, C_WORD);
+        transition(S_WORD, S_WORD, C_ZERO, C_OCTAL, C_DIGIT, C_X, C_HEX, C_LETTER, C_STAR, C_WORD);
+        transition(S_INVALID, S_INVALID, C_ZERO, C_OCTAL, C_DIGIT, C_X, C_HEX, C_LETTER, C_STAR, C_WORD);
+
+        ACCEPTS[S_ZERO] = Token.DECIMAL;
+        ACCEPTS[S_OCTAL] = Token.OCTAL;
+        ACCEPTS[S_DECIMAL] = Token.DECIMAL;
+        ACCEPTS[S_HEX] = Token.HEXADEMICAL;
+        ACCEPTS[S_WORD] = Token.ID;
+
+        KEYWORD_SEED = keywordSeed();
+        KEY_WORDS.forEach((keyword, token) -> {
+            int hash = keywordHash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length(), KEYWORD_SEED);
+            KEYWORD_TEXTS[hash] = keyword;
+            KEYWORD_TOKENS[hash] = token;
+        });
+    }
+
+    private final CharSequence program;
+    private final Symbols symbols;
+    private final LineIndex lines;
+    private final int end;
     private char ch;
-    private int index = 0;
-    public int line = 1;
+    private int index;
 
     public Token token;
-    public String value;
+    public int start;
+    public int length;
+    public int symbol;
 
-    public Lexer(String program) {
-        if (program.length() == 0) {
+    public Lexer(CharSequence program) {
+        this(program, new Symbols());
+    }
+
+    public Lexer(CharSequence program, Symbols symbols) {
+        this(program, symbols, new LineIndex(program), 0, program.length());
+    }
+
+    Lexer(CharSequence program, Symbols symbols, LineIndex lines, int from, int to) {
+        if (from >= to) {
             throw new RuntimeException("Empty program");
         }
 
         this.program = program;
-        chars = program.toCharArray();
-        ch = chars[0];
+        this.symbols = symbols;
+        this.lines = lines;
+        index = from;
+        end = to;
+        ch = program.charAt(from);
+    }
+
+    public TokenStream tokenize() {
+        TokenStream tokens = new TokenStream(program, lines);
+
+        do {
+            nextToken();
+            tokens.add(token, start, length, symbol);
+        } while (token != Token.EOF);
+
+        return tokens;
+    }
+
+    @Override
+    public void advance() {
+        nextToken();
+    }
+
+    @Override
+    public Token token() {
+        return token;
+    }
+
+    @Override
+    public String value() {
+        return token == Token.EOF ? null : substring(start, start + length);
+    }
+
+    @Override
+    public int line() {
+        return lines.line(start + length);
+    }
+
+    @Override
+    public int symbol() {
+        return symbol;
+    }
+
+    public Symbols symbols() {
+        return symbols;
+    }
+
+    @Override
+    public Token peek(int distance) {
+        char markCh = ch;
+        int markIndex = index, markStart = start, markLength = length, markSymbol = symbol;
+        Token markToken = token;
+
+        for (int i = 0; i < distance && token != Token.EOF; i++) {
+            nextToken();
+        }
+        Token peeked = token;
+
+        ch = markCh;
+        index = markIndex;
+        start = markStart;
+        length = markLength;
+        symbol = markSymbol;
+        token = markToken;
+
+        return peeked;
     }
 
     private void nextChar() {
-        ch = index < chars.length - 1 ? chars[++index] : Character.MIN_VALUE;
+        ch = index < end - 1 ? program.charAt(++index) : Character.MIN_VALUE;
     }
 
     public void nextToken() {
         token = null;
-        value = null;
+        symbol = Symbols.NONE;
 
         while (token == null) {
             if (isEOF()) {
                 token = Token.EOF;
+                span(end, 0);
 
-            } else if (String.valueOf(ch).isBlank() || ch == '"' || ch == '\'') {
-                if (ch == '\n') line++;
+            } else if (isSkipped(ch)) {
                 nextChar();
 
-            } else if (index < chars.length - 1 && LOGICAL.containsKey("" + ch + chars[index + 1])) {
-                value = "" + ch + chars[index + 1];
-                token = LOGICAL.get(value);
-                nextChar();
+            } else if (index < end - 1 && pair(ch, program.charAt(index + 1)) != null) {
+                token = pair(ch, program.charAt(index + 1));
+                span(index, 2);
                 nextChar();
-
-            } else if (LOGICAL.containsKey(String.valueOf(ch))) {
-                value = String.valueOf(ch);
-                token = LOGICAL.get(value);
                 nextChar();
 
-            } else if (SYMBOLS.containsKey(ch)) {
-                token = SYMBOLS.get(ch);
-                value = String.valueOf(ch);
+            } else if (ch < TABLE_SIZE && OPERATORS[ch] != null) {
+                token = OPERATORS[ch];
+                span(index, 1);
                 nextChar();
 
             } else if (ch == '#') {
-                int includeEndIndex = program.indexOf(">", index + 1);
+                int includeEndIndex = indexOf(">", index + 1);
                 if (includeEndIndex < 0) {
-                    throw new RuntimeException("Illegal include at line " + line);
+                    throw new RuntimeException("Illegal include at line " + lines.line(index));
                 }
 
-                String include = program.substring(index, includeEndIndex + 1);
+                String include = substring(index, includeEndIndex + 1);
                 String[] includeParts = include.split(" ");
 
                 if (!(includeParts.length == 2 &&
                         includeParts[0].equals("#include") &&
                         includeParts[1].matches("<\\w+.h>"))) {
-                    throw new RuntimeException("Illegal include at line " + line);
+                    throw new RuntimeException("Illegal include at line " + lines.line(index));
                 }
 
-                value = includeParts[1].substring(1, includeParts[1].indexOf("."));
+                int nameStart = includeEndIndex - includeParts[1].length() + 2;
+                span(nameStart, indexOf(".", nameStart) - nameStart);
                 token = Token.INCLUDE;
 
                 index = includeEndIndex;
                 nextChar();
 
-            } else if (index > 0 && chars[index - 1] == '\'') {
+            } else if (index > 0 && program.charAt(index - 1) == '\'') {
                 nextChar();
 
                 if (ch != '\'') {
                     throw new RuntimeException(
                             String.format("Illegal character literal '%s' at line %d",
-                                    program.substring(index - 1, program.indexOf("'", index)), line));
+                                    substring(index - 1, indexOf("'", index)), lines.line(index)));
                 }
 
                 token = Token.CHARACTER;
-                value = String.valueOf(chars[index - 1]);
+                span(index - 1, 1);
 
-            } else if (index > 0 && chars[index - 1] == '"') {
-                int closeQuotesIndex = program.indexOf("\"", index);
+            } else if (index > 0 && program.charAt(index - 1) == '"') {
+                int closeQuotesIndex = indexOf("\"", index);
                 if (closeQuotesIndex < 0) {
-                    throw new RuntimeException("Close double quotes not found at line " + line);
+                    throw new RuntimeException("Close double quotes not found at line " + lines.line(index));
                 }
-                value = closeQuotesIndex - index == 1 ? "" : program.substring(index, closeQuotesIndex);
+                span(index, closeQuotesIndex - index == 1 ? 0 : closeQuotesIndex - index);
                 token = Token.STRING;
 
                 index = closeQuotesIndex;
-                line += value.chars().filter(ch -> ch == '\n').count();
                 nextChar();
 
-            } else if (Character.isDigit(ch) || Character.isLetter(ch) || ch == '*') {
-                StringBuilder word = new StringBuilder();
-
-                while (((Character.isLetter(ch) ||
-                        Character.isDigit(ch) ||
-                        ch == '_' ||
-                        ch == '*' ||
-                        ch == '[' ||
-                        ch == ']') && index < chars.length) ||
-                        index < chars.length - 4 && program.startsWith("unsigned char", index - 8)) {
-                    word.append(ch);
+            } else if (TRANSITIONS[S_START][classOf(ch)] != S_STOP) {
+                int wordStart = index;
+                int state = S_START;
+                int next;
+
+                while ((next = TRANSITIONS[state][classOf(ch)]) != S_STOP) {
+                    state = next;
                     nextChar();
+
+                    if (state == S_WORD && ch == ' ' && index - wordStart == UNSIGNED.length() &&
+                            startsWith(UNSIGNED_CHAR, wordStart)) {
+                        nextChar();
+                    }
                 }
 
-                value = word.toString();
+                span(wordStart, (isEOF() ? end : index) - wordStart);
+                token = ACCEPTS[state];
 
-                if (isHex(value)) {
-                    token = Token.HEXADEMICAL;
-                } else if (isOct(value)) {
-                    token = Token.OCTAL;
-                } else if (isDecimal(value)) {
-                    token = Token.DECIMAL;
-                } else if (!isValidNumber(value)) {
-                    int expressionEndIndex = program.indexOf(" ", index + 1);
+                if (token == null) {
+                    int expressionEndIndex = indexOf(" ", index + 1);
                     throw new RuntimeException(
                             String.format("Illegal expression %s at line %d",
-                                    program.substring(index - value.length(), expressionEndIndex < 0 ? chars.length : expressionEndIndex),
-                                    line));
-                } else {
-                    token = KEY_WORDS.getOrDefault(value, Token.ID);
+                                    substring(wordStart, expressionEndIndex < 0 ? end : expressionEndIndex),
+                                    lines.line(index)));
+                } else if (token == Token.ID) {
+                    token = keyword(start, length);
                 }
 
-            } else if (ch == '/' && index < chars.length - 1) {
-                if (chars[index + 1] == '/') {
-                    int endCommentIndex = program.indexOf("\n", index + 1);
-                    String comment;
+                if (token == Token.ID) {
+                    symbol = symbols.intern(program, start, length);
+                }
+
+            } else if (ch == '/' && index < end - 1) {
+                if (program.charAt(index + 1) == '/') {
+                    int endCommentIndex = indexOf("\n", index + 1);
 
                     if (endCommentIndex < 0) {
-                        comment = program.substring(index, chars.length);
-                        index = chars.length;
+                        span(index, end - index);
+                        index = end;
                     } else {
-                        comment = program.substring(index, endCommentIndex);
+                        span(index, endCommentIndex - index);
                         index = endCommentIndex;
-                        ch = chars[index];
+                        ch = program.charAt(index);
                     }
 
                     token = Token.COMMENT;
-                    value = comment;
 
-                } else if (chars[index + 1] == '*') {
-                    int endMultiCommentIndex = program.indexOf("*/", index + 1);
+                } else if (program.charAt(index + 1) == '*') {
+                    int endMultiCommentIndex = indexOf("*/", index + 1);
 
                     if (endMultiCommentIndex < 0) {
-                        throw new RuntimeException("Illegal multi-comment syntax at line " + line);
+                        throw new RuntimeException("Illegal multi-comment syntax at line " + lines.line(index));
                     }
 
-                    String comment = program.substring(index, endMultiCommentIndex + 2);
+                    span(index, endMultiCommentIndex + 2 - index);
 
-                    if (endMultiCommentIndex < chars.length - 2) {
+                    if (endMultiCommentIndex < end - 2) {
                         index = endMultiCommentIndex + 2;
-                        ch = chars[index];
+                        ch = program.charAt(index);
                     } else {
-                        index = chars.length;
+                        index = end;
                     }
 
                     token = Token.MULTI_COMMENT;
-                    value = comment;
-                    line += value.chars().filter(ch -> ch == '\n').count();
                 } else {
-                    int tokenEndIndex = program.indexOf(" ", index + 1);
-                    String unexpectedToken = program.substring(index, tokenEndIndex < 0 ? chars.length : tokenEndIndex);
-                    throw new RuntimeException(String.format("Unexpected token %s at line %d", unexpectedToken, line));
+                    int tokenEndIndex = indexOf(" ", index + 1);
+                    String unexpectedToken = substring(index, tokenEndIndex < 0 ? end : tokenEndIndex);
+                    throw new RuntimeException(String.format("Unexpected token %s at line %d", unexpectedToken, lines.line(index)));
                 }
             } else {
-                int tokenEndIndex = program.indexOf(" ", index);
-                String unexpectedToken = program.substring(index, tokenEndIndex < 0 ? chars.length : tokenEndIndex);
-                throw new RuntimeException(String.format("Unexpected token %s at line %d", unexpectedToken, line));
+                int tokenEndIndex = indexOf(" ", index);
+                String unexpectedToken = substring(index, tokenEndIndex < 0 ? end : tokenEndIndex);
+                throw new RuntimeException(String.format("Unexpected token %s at line %d", unexpectedToken, lines.line(index)));
+            }
+        }
+    }
+
+    private void span(int start, int length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    private int indexOf(String text, int from) {
+        for (int i = from; i <= end - text.length(); i++) {
+            if (startsWith(text, i)) {
+                return i;
             }
         }
+
+        return -1;
+    }
+
+    private boolean startsWith(String text, int from) {
+        if (from < 0 || from > end - text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            if (program.charAt(from + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String substring(int from, int to) {
+        return program.subSequence(from, to).toString();
+    }
+
+    private static boolean isSkipped(char ch) {
+        return ch < TABLE_SIZE ? SKIPPED[ch] : Character.isWhitespace(ch);
+    }
+
+    private static Token pair(char first, char second) {
+        return first < TABLE_SIZE && second < TABLE_SIZE ? PAIRS[pairIndex(first, second)] : null;
+    }
+
+    private static int pairIndex(char first, char second) {
+        return first * TABLE_SIZE + second;
     }
 
     private boolean isEOF() {
-        return index == chars.length || ch == Character.MIN_VALUE;
+        return index == end || ch == Character.MIN_VALUE;
+    }
+
+    private Token keyword(int start, int length) {
+        int hash = keywordHash(program.charAt(start), program.charAt(start + length - 1), length, KEYWORD_SEED);
+        String keyword = KEYWORD_TEXTS[hash];
+
+        return keyword != null && keyword.length() == length && startsWith(keyword, start)
+                ? KEYWORD_TOKENS[hash]
+                : Token.ID;
+    }
+
+    private static int keywordHash(char first, char last, int length, int seed) {
+        return (first * seed + last + length) & (KEYWORD_TABLE_SIZE - 1);
     }
 
-    public static boolean isHex(String number) {
-        return number.matches("0x[\\da-fA-F]+");
+    private static int keywordSeed() {
+        for (int seed = 1; seed < 1024; seed++) {
+            boolean[] used = new boolean[KEYWORD_TABLE_SIZE];
+            boolean perfect = true;
+
+            for (String keyword : KEY_WORDS.keySet()) {
+                int hash = keywordHash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length(), seed);
+                perfect &= !used[hash];
+                used[hash] = true;
+            }
+
+            if (perfect) {
+                return seed;
+            }
+        }
+
+        throw new RuntimeException("No perfect hash found for key words");
     }
 
-    public static boolean isOct(String number) {
-        return number.matches("0[0-7]+");
+    private static void transition(int from, int to, int... classes) {
+        for (int charClass : classes) {
+            TRANSITIONS[from][charClass] = (byte) to;
+        }
     }
 
-    public static boolean isDecimal(String number) {
-        return number.matches("\\d+");
+    private static int charClass(char c) {
+        if (c == '0') return C_ZERO;
+        if (c >= '1' && c <= '7') return C_OCTAL;
+        if (c == '8' || c == '9') return C_DIGIT;
+        if (c == 'x') return C_X;
+        if (c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F') return C_HEX;
+        if (Character.isLetter(c)) return C_LETTER;
+        if (c == '*') return C_STAR;
+        if (c == '_' || c == '[' || c == ']') return C_WORD;
+        return C_OTHER;
     }
 
-    private static boolean isValidNumber(String number) {
-        return !number.matches("\\d.+");
+    private static int classOf(char c) {
+        if (c < TABLE_SIZE) {
+            return CLASSES[c];
+        }
+
+        return Character.isLetterOrDigit(c) ? C_LETTER : C_OTHER;
     }
 }
@@ -0,0 +1,55 @@
+package com.kpi.fict;
+
+import java.util.Arrays;
+
+public class LineIndex {
+    private final CharSequence program;
+    private int[] starts;
+    private int count;
+
+    public LineIndex(CharSequence program) {
+        this.program = program;
+    }
+
+    public int line(int offset) {
+        int[] starts = starts();
+        int low = 0, high = count - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low + 1;
+    }
+
+    public int column(int offset) {
+        return offset - starts()[line(offset) - 1] + 1;
+    }
+
+    private synchronized int[] starts() {
+        if (starts == null) {
+            int[] starts = new int[64];
+            int count = 1;
+            int length = program.length();
+
+            for (int i = 0; i < length; i++) {
+                if (program.charAt(i) == '\n') {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = i + 1;
+                }
+            }
+
+            this.count = count;
+            this.starts = starts;
+        }
+
+        return starts;
+    }
+}
@@ -0,0 +1,287 @@
+package com.kpi.fict;
+
+import java.util.*;
+
+public class Lowering {
+
+    private enum Command {
+        ADD, SUB, JE, JNE, JG, JL, JGE, JLE
+    }
+
+    private enum Register {
+        EAX, EBX, ECX, EDX, EBP, ESP, EDI, ESI
+    }
+
+    private static final Register[] ALLOCATABLE_REGISTERS = {
+        Register.EBX, Register.ECX, Register.EDX, Register.ESI, Register.EDI
+    };
+
+    public static final int REGISTER_COUNT = ALLOCATABLE_REGISTERS.length;
+
+    private final Map<Token, Command> JUMP_COMMANDS = new HashMap<>() {{
+        put(Token.EQUAL, Command.JE);
+        put(Token.NOT_EQUAL, Command.JNE);
+        put(Token.LESS, Command.JL);
+        put(Token.MORE, Command.JG);
+        put(Token.LESS_EQUAL, Command.JLE);
+        put(Token.MORE_EQUAL, Command.JGE);
+    }};
+
+    private final Map<Token, Token> INVERSE_CONDITIONS = new HashMap<>() {{
+        put(Token.EQUAL, Token.NOT_EQUAL);
+        put(Token.NOT_EQUAL, Token.EQUAL);
+        put(Token.LESS, Token.MORE_EQUAL);
+        put(Token.MORE_EQUAL, Token.LESS);
+        put(Token.MORE, Token.LESS_EQUAL);
+        put(Token.LESS_EQUAL, Token.MORE);
+    }};
+
+    private final Map<Ir.Op, Command> MATH_COMMANDS = new HashMap<>() {{
+        put(Ir.Op.ADD, Command.ADD);
+        put(Ir.Op.SUB, Command.SUB);
+    }};
+
+    private final Ir ir;
+    private final RegisterAllocator.Allocation allocation;
+    private final boolean main;
+    private final Set<String> homes = new LinkedHashSet<>();
+    private final Set<Integer> memory = new HashSet<>();
+    private final Map<Ir.Block, Integer> labels = new HashMap<>();
+    private final Emitter.Listing commands = new Emitter.Listing();
+
+    public Lowering(Ir ir, RegisterAllocator.Allocation allocation) {
+        this.ir = ir;
+        this.allocation = allocation;
+        main = ir.name().equals("main");
+    }
+
+    public Emitter.Listing lower() {
+        List<Ir.Block> blocks = ir.blocks();
+        Set<Ir.Block> targets = new HashSet<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            targets.addAll(jumps(blocks.get(i).terminator(), next(blocks, i)));
+        }
+        for (Ir.Block block : blocks) {
+            if (targets.contains(block)) {
+                labels.put(block, labels.size() + 1);
+            }
+        }
+
+        if (main) {
+            commands.add("main:");
+
+            Ir.Operand[] params = ir.params();
+            if (params.length > 0 && isRead(params[0])) {
+                commands.add("invoke crt___p___argc");
+                move(operand(params[0]), isMemory(params[0]), "[" + Register.EAX + "]", true);
+            }
+        } else {
+            commands.add(ir.name() + " proc");
+            commands.add("push ebp");
+            commands.add("mov ebp, esp");
+
+            Ir.Operand[] params = ir.params();
+            for (int i = 0; i < params.length; i++) {
+                move(operand(params[i]), isMemory(params[i]), "[ebp+" + (8 + 4 * i) + "]", true);
+            }
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            Ir.Block block = blocks.get(i);
+            if (labels.containsKey(block)) {
+                commands.add(label(block) + ":");
+            }
+
+            for (Ir.Instruction instruction : block.instructions) {
+                lower(instruction, next(blocks, i));
+            }
+        }
+
+        commands.add(main ? "end main" : ir.name() + " endp");
+
+        return commands;
+    }
+
+    public Set<String> homes() {
+        return homes;
+    }
+
+    public boolean inMemory(int symbol) {
+        return memory.contains(symbol);
+    }
+
+    private boolean isRead(Ir.Operand variable) {
+        for (Ir.Block block : ir.blocks()) {
+            for (Ir.Instruction instruction : block.instructions) {
+                for (Ir.Operand operand : instruction.operands) {
+                    if (operand.same(variable)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static Ir.Block next(List<Ir.Block> blocks, int index) {
+        return index + 1 < blocks.size() ? blocks.get(index + 1) : null;
+    }
+
+    private static List<Ir.Block> jumps(Ir.Instruction terminator, Ir.Block next) {
+        Ir.Block[] successors = terminator.successors;
+
+        return switch (terminator.op) {
+            case BRANCH -> successors[0] == next ? List.of(successors[1])
+                    : successors[1] == next ? List.of(successors[0])
+                    : List.of(successors);
+            case JUMP -> successors[0] == next ? List.of() : List.of(successors[0]);
+            default -> List.of();
+        };
+    }
+
+    private void lower(Ir.Instruction instruction, Ir.Block next) {
+        Ir.Operand[] operands = instruction.operands;
+
+        switch (instruction.op) {
+            case MOVE -> move(operand(instruction.target), isMemory(instruction.target),
+                    operand(operands[0]), isMemory(operands[0]));
+
+            case ADD, SUB -> arithmetic(instruction);
+
+            case BRANCH -> {
+                Ir.Block ifTrue = instruction.successors[0];
+                Ir.Block ifFalse = instruction.successors[1];
+                compare(operands[0], operands[1]);
+
+                if (ifTrue == next) {
+                    commands.add(JUMP_COMMANDS.get(INVERSE_CONDITIONS.get(instruction.condition)) + " " + label(ifFalse));
+                } else {
+                    commands.add(JUMP_COMMANDS.get(instruction.condition) + " " + label(ifTrue));
+                    if (ifFalse != next) {
+                        commands.add("jmp " + label(ifFalse));
+                    }
+                }
+            }
+
+            case JUMP -> {
+                if (instruction.successors[0] != next) {
+                    commands.add("jmp " + label(instruction.successors[0]));
+                }
+            }
+
+            case CALL -> {
+                for (int i = operands.length - 1; i >= 0; i--) {
+                    commands.add("push " + operand(operands[i]));
+                }
+                commands.add("call " + instruction.callee);
+                if (operands.length > 0) {
+                    commands.add("add esp, " + 4 * operands.length);
+                }
+
+                if (instruction.target != null) {
+                    move(operand(instruction.target), isMemory(instruction.target), Register.EAX.toString(), false);
+                }
+            }
+
+            case PRINT -> {
+                StringBuilder arguments = new StringBuilder("ADDR " + operands[0]);
+                for (int i = 1; i < operands.length; i++) {
+                    arguments.append(", ").append(operand(operands[i]));
+                }
+                commands.add("invoke crt_printf, " + arguments);
+            }
+
+            case RETURN -> {
+                String value = operands.length == 0 ? null : operand(operands[0]);
+                if (main) {
+                    commands.add("invoke ExitProcess, " + (value == null ? "0" : value));
+                } else {
+                    if (value != null) {
+                        commands.add("mov " + Register.EAX + ", " + value);
+                    }
+                    commands.add("pop ebp");
+                    commands.add("ret");
+                }
+            }
+        }
+    }
+
+    private void move(String target, boolean targetInMemory, String source, boolean sourceInMemory) {
+        if (target.equals(source)) {
+            return;
+        }
+
+        if (targetInMemory && sourceInMemory) {
+            commands.add("mov " + Register.EAX + ", " + source);
+            source = Register.EAX.toString();
+        }
+
+        commands.add("mov " + target + ", " + source);
+    }
+
+    private void arithmetic(Ir.Instruction instruction) {
+        Ir.Operand target = instruction.target;
+        Ir.Operand operand1 = instruction.operands[0];
+        Ir.Operand operand2 = instruction.operands[1];
+
+        Register register = register(target);
+        String result = register != null && register != register(operand2)
+                ? register.toString()
+                : Register.EAX.toString();
+
+        if (!result.equals(operand(operand1))) {
+            commands.add("mov " + result + ", " + operand(operand1));
+        }
+        commands.add(MATH_COMMANDS.get(instruction.op) + " " + result + ", " + operand(operand2));
+
+        move(operand(target), isMemory(target), result, false);
+    }
+
+    private void compare(Ir.Operand operand1, Ir.Operand operand2) {
+        String left = operand(operand1);
+        String right = operand(operand2);
+
+        if (operand1.is(Ir.Kind.IMMEDIATE)) {
+            commands.add("mov " + Register.EAX + ", " + left);
+            left = Register.EAX.toString();
+        } else if (isMemory(operand1) && isMemory(operand2)) {
+            commands.add("mov " + Register.EAX + ", " + right);
+            right = Register.EAX.toString();
+        }
+
+        commands.add("cmp " + left + ", " + right);
+    }
+
+    private String label(Ir.Block block) {
+        return "@" + ir.name() + "_" + labels.get(block);
+    }
+
+    private Register register(Ir.Operand operand) {
+        int register = allocation.register(operand);
+        return register == RegisterAllocator.SPILLED ? null : ALLOCATABLE_REGISTERS[register];
+    }
+
+    private boolean isMemory(Ir.Operand operand) {
+        return (operand.is(Ir.Kind.VARIABLE) || operand.is(Ir.Kind.TEMP)) && register(operand) == null;
+    }
+
+    private String operand(Ir.Operand operand) {
+        Register register = register(operand);
+        if (register != null) {
+            return register.toString();
+        }
+
+        if (operand.is(Ir.Kind.TEMP)) {
+            String home = ir.name() + "_" + operand.text;
+            homes.add(home);
+            return home;
+        }
+
+        if (operand.is(Ir.Kind.VARIABLE)) {
+            memory.add(operand.id);
+        }
+
+        return operand.text;
+    }
+}
@@ -2,17 +2,21 @@ package com.kpi.fict;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class Main {
 
     private final static String INPUT_PATH = "src/main/resources/program.c";
+    private final static String OUTPUT_PATH = "output.asm";
+    private final static String PROGRAM_NAME = "Upper-lower case";
+    private final static int TOKEN_RING_CAPACITY = 1 << 12;
 
     public static void main(String[] args) {
 
-        if (args.length != 2) {
+        if (args.length < 2) {
             throw new RuntimeException("Input file path and character must be given");
         }
 
@@ -29,35 +33,146 @@ public class Main {
             character = args[1].toCharArray()[0];
         }
 
-        String program;
-        try {
-            program = String.join("\n", Files.readAllLines(Paths.get(input.getPath())));
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("Input file %s not found", input.getName()));
+        boolean tokenize = false;
+        boolean parallelLex = false;
+        boolean pipeline = false;
+        boolean parallelParse = false;
+        boolean lazy = false;
+        String cacheDirectory = null;
+        String outputPath = OUTPUT_PATH;
+        Peephole peephole = new Peephole();
+        boolean peepholeStats = false;
+        boolean dumpIr = false;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tokenize" -> tokenize = true;
+                case "--parallel-lex" -> parallelLex = true;
+                case "--pipeline" -> pipeline = true;
+                case "--parallel-parse" -> parallelParse = true;
+                case "--lazy" -> lazy = true;
+                case "--cache" -> {
+                    if (++i == args.length) {
+                        throw new RuntimeException("Cache directory must be given");
+                    }
+                    cacheDirectory = args[i];
+                }
+                case "--peephole" -> {
+                    if (++i == args.length) {
+                        throw new RuntimeException("Peephole rules must be given");
+                    }
+                    peephole = Peephole.parse(args[i]);
+                }
+                case "--peephole-stats" -> peepholeStats = true;
+                case "--dump-ir" -> dumpIr = true;
+                case "-o" -> {
+                    if (++i == args.length) {
+                        throw new RuntimeException("Output file must be given");
+                    }
+                    outputPath = args[i];
+                }
+                default -> throw new RuntimeException("Unknown option " + args[i]);
+            }
         }
 
-        Parser parser = new Parser(program);
-        parser.parse("Upper-lower case");
+        MappedSource program = MappedSource.open(input.toPath());
 
-        Node root = parser.getRoot();
-        parser.setCharacter(root, character);
+        AstCache cache = null;
+        String key = null;
+        Ast cached = null;
+        if (cacheDirectory != null) {
+            if (lazy) {
+                throw new RuntimeException("Lazy parsing can't be combined with --cache");
+            }
 
-        Compiler compiler = new Compiler(root);
-        compiler.compile();
-        String result = compiler.getProgram();
+            cache = new AstCache(Path.of(cacheDirectory));
+            key = cache.key(program);
+            cached = cache.load(key);
+        }
 
-        File file = new File("output.asm");
+        Compiler compiler;
+        if (cached != null) {
+            Parser.setCharacter(cached, cached.root(), character);
+            compiler = new Compiler(cached);
+        } else {
+            compiler = compile(program, cache, key, character, tokenize, parallelLex, pipeline, parallelParse, lazy);
+        }
 
-        try {
-            file.createNewFile();
+        if (dumpIr) {
+            compiler.setIrDump(System.err);
+        }
+
+        if (outputPath.equals("-")) {
+            compiler.compile(Channels.newChannel(System.out), peephole);
+            System.out.flush();
+        } else {
+            try (FileChannel output = FileChannel.open(Path.of(outputPath),
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                compiler.compile(output, peephole);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (peepholeStats) {
+            System.err.print(peephole.report());
+        }
+    }
 
-            PrintWriter writer = new PrintWriter(file);
-            writer.write(result);
+    private static Compiler compile(MappedSource program,
+                                    AstCache cache,
+                                    String key,
+                                    char character,
+                                    boolean tokenize,
+                                    boolean parallelLex,
+                                    boolean pipeline,
+                                    boolean parallelParse,
+                                    boolean lazy) {
+        Symbols symbols = new Symbols();
+        TokenCursor tokens;
+        if (parallelLex) {
+            tokens = new ParallelLexer(program, symbols).tokenize();
+        } else if (pipeline) {
+            tokens = new TokenRing(program, symbols, TOKEN_RING_CAPACITY).start();
+        } else {
+            Lexer lexer = new Lexer(program, symbols);
+            tokens = tokenize || parallelParse || lazy ? lexer.tokenize() : lexer;
+        }
+
+        if ((parallelParse || lazy) && !(tokens instanceof TokenStream)) {
+            throw new RuntimeException("Parallel and lazy parsing can't be combined with --pipeline");
+        }
+
+        if (parallelParse) {
+            if (lazy) {
+                throw new RuntimeException("Parallel parsing can't be combined with --lazy");
+            }
+
+            Ast ast = new ParallelParser((TokenStream) tokens, symbols).parse(PROGRAM_NAME);
+            if (cache != null) {
+                cache.store(key, ast);
+            }
 
-            writer.flush();
-            writer.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            Parser.setCharacter(ast, ast.root(), character);
+            return new Compiler(ast);
         }
+
+        Parser parser = lazy
+                ? new Parser((TokenStream) tokens, symbols, true)
+                : new Parser(tokens, symbols);
+        try {
+            parser.parse(PROGRAM_NAME);
+        } finally {
+            if (tokens instanceof TokenRing ring) {
+                ring.cancel();
+            }
+        }
+        if (cache != null) {
+            cache.store(key, parser.getAst());
+        }
+
+        parser.setCharacter(character);
+        return new Compiler(parser);
     }
 }
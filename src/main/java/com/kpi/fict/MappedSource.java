@@ -0,0 +1,68 @@
+package com.kpi.fict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source file mapped into memory and indexed by byte. Every non-ASCII byte reads as
+ * {@link #NON_ASCII}, so UTF-8 text is only accepted inside comments and string literals,
+ * whose spans are decoded when their text is taken with {@link #toString()}.
+ */
+public class MappedSource implements CharSequence {
+    private static final char NON_ASCII = '\uFFFD';
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private MappedSource(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static MappedSource open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException(String.format("Input file %s is too large", path.getFileName()));
+            }
+
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), 0, (int) size);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Input file %s not found", path.getFileName()));
+        }
+    }
+
+    public ByteBuffer bytes() {
+        return buffer.slice(offset, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        byte value = buffer.get(offset + index);
+        return value < 0 ? NON_ASCII : (char) value;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
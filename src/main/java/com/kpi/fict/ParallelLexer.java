@@ -0,0 +1,145 @@
+package com.kpi.fict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelLexer {
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private static class Chunk {
+        final TokenStream tokens;
+        final Symbols symbols;
+
+        public Chunk(TokenStream tokens, Symbols symbols) {
+            this.tokens = tokens;
+            this.symbols = symbols;
+        }
+    }
+
+    private final CharSequence program;
+    private final Symbols symbols;
+    private final LineIndex lines;
+    private final ForkJoinPool pool;
+
+    public ParallelLexer(CharSequence program, Symbols symbols) {
+        this(program, symbols, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(CharSequence program, Symbols symbols, ForkJoinPool pool) {
+        this.program = program;
+        this.symbols = symbols;
+        this.pool = pool;
+        lines = new LineIndex(program);
+    }
+
+    public TokenStream tokenize() {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, program.length() / (pool.getParallelism() * 4));
+        int[] boundaries = boundaries(chunkSize);
+
+        if (boundaries.length <= 2 || pool.getParallelism() < 2) {
+            return sequential();
+        }
+
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            int from = boundaries[i], to = boundaries[i + 1];
+            tasks.add(pool.submit(() -> lex(from, to)));
+        }
+
+        TokenStream tokens = new TokenStream(program, lines);
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            if (chunk == null) {
+                tasks.forEach(other -> other.cancel(false));
+                return sequential();
+            }
+
+            int[] symbolMap = new int[chunk.symbols.size()];
+            for (int symbol = 0; symbol < symbolMap.length; symbol++) {
+                symbolMap[symbol] = symbols.intern(chunk.symbols.name(symbol));
+            }
+
+            tokens.append(chunk.tokens, symbolMap);
+        }
+        tokens.add(Token.EOF, program.length(), 0, Symbols.NONE);
+
+        return tokens;
+    }
+
+    private TokenStream sequential() {
+        return new Lexer(program, symbols, lines, 0, program.length()).tokenize();
+    }
+
+    private Chunk lex(int from, int to) {
+        Symbols chunkSymbols = new Symbols();
+        TokenStream tokens;
+
+        try {
+            tokens = new Lexer(program, chunkSymbols, lines, from, to).tokenize();
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        if (to < program.length()) {
+            int last = tokens.size() - 2;
+            if (last < 0 || tokens.token(last) != Token.RPAR || tokens.start(last) != to - 1) {
+                return null;
+            }
+        }
+
+        return new Chunk(tokens, chunkSymbols);
+    }
+
+    private int[] boundaries(int chunkSize) {
+        int[] boundaries = new int[16];
+        int count = 1;
+        int length = program.length();
+        int depth = 0;
+        int next = chunkSize;
+
+        for (int i = 0; i < length && next < length; i++) {
+            char ch = program.charAt(i);
+
+            if (ch == '"') {
+                i = skipTo(i + 1, "\"");
+            } else if (ch == '/' && i + 1 < length && program.charAt(i + 1) == '/') {
+                i = skipTo(i + 2, "\n");
+            } else if (ch == '/' && i + 1 < length && program.charAt(i + 1) == '*') {
+                i = skipTo(i + 2, "*/") + 1;
+            } else if (ch == '{') {
+                depth++;
+            } else if (ch == '}' && --depth == 0 && i + 1 >= next && i + 1 < length) {
+                if (count == boundaries.length) {
+                    boundaries = Arrays.copyOf(boundaries, count * 2);
+                }
+                boundaries[count++] = i + 1;
+                next = i + 1 + chunkSize;
+            }
+        }
+
+        boundaries = Arrays.copyOf(boundaries, count + 1);
+        boundaries[count] = length;
+
+        return boundaries;
+    }
+
+    private int skipTo(int from, String text) {
+        int length = program.length();
+
+        for (int i = from; i <= length - text.length(); i++) {
+            boolean matches = true;
+            for (int j = 0; j < text.length() && matches; j++) {
+                matches = program.charAt(i + j) == text.charAt(j);
+            }
+
+            if (matches) {
+                return i;
+            }
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,141 @@
+package com.kpi.fict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelParser {
+    private static final int MIN_CHUNK_SIZE = 1 << 12;
+
+    private final TokenStream tokens;
+    private final Symbols symbols;
+    private final ForkJoinPool pool;
+
+    public ParallelParser(TokenStream tokens, Symbols symbols) {
+        this(tokens, symbols, ForkJoinPool.commonPool());
+    }
+
+    public ParallelParser(TokenStream tokens, Symbols symbols, ForkJoinPool pool) {
+        this.tokens = tokens;
+        this.symbols = symbols;
+        this.pool = pool;
+    }
+
+    public Ast parse(String programName) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, tokens.size() / (pool.getParallelism() * 4));
+        int[] boundaries = boundaries(chunkSize);
+
+        if (boundaries == null || boundaries.length <= 2 || pool.getParallelism() < 2) {
+            return sequential(programName);
+        }
+
+        List<ForkJoinTask<Ast>> tasks = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            int from = boundaries[i], to = boundaries[i + 1];
+            tasks.add(pool.submit(() -> parse(from, to)));
+        }
+
+        Ast ast = new Ast(symbols);
+        int root = ast.add(Token.PROGRAM, programName);
+        ast.setRoot(root);
+
+        for (ForkJoinTask<Ast> task : tasks) {
+            Ast chunk = task.join();
+            if (chunk == null) {
+                tasks.forEach(other -> other.cancel(false));
+                return sequential(programName);
+            }
+
+            int offset = ast.append(chunk, chunk.root() + 1);
+            for (int child = chunk.firstChild(chunk.root()); child != Ast.NONE; child = chunk.nextSibling(child)) {
+                ast.addChild(root, child + offset);
+            }
+        }
+
+        return ast;
+    }
+
+    private Ast sequential(String programName) {
+        Parser parser = new Parser(tokens, symbols);
+        parser.parse(programName);
+
+        return parser.getAst();
+    }
+
+    private Ast parse(int from, int to) {
+        Parser parser = new Parser(new TokenSlice(tokens, from, to), symbols);
+
+        try {
+            parser.parse(null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return parser.getAst();
+    }
+
+    private int[] boundaries(int chunkSize) {
+        int[] boundaries = new int[16];
+        int count = 1;
+        int size = tokens.size() - 1;
+        int next = chunkSize;
+
+        for (int i = 0; i < size; ) {
+            Token token = tokens.token(i);
+
+            if (token == Token.INCLUDE || token == Token.COMMENT || token == Token.MULTI_COMMENT) {
+                i++;
+            } else if (Parser.DATA_TYPES.contains(token) && i + 2 < size
+                    && tokens.token(i + 1) == Token.ID && tokens.token(i + 2) == Token.LBRA) {
+                i = procedureEnd(i + 3, size);
+            } else {
+                return null;
+            }
+
+            if (i < 0) {
+                return null;
+            }
+
+            if (i >= next && i < size) {
+                if (count == boundaries.length) {
+                    boundaries = Arrays.copyOf(boundaries, count * 2);
+                }
+                boundaries[count++] = i;
+                next = i + chunkSize;
+            }
+        }
+
+        boundaries = Arrays.copyOf(boundaries, count + 1);
+        boundaries[count] = size;
+
+        return boundaries;
+    }
+
+    private int procedureEnd(int parameters, int size) {
+        int i = parameters;
+        while (i < size && tokens.token(i) != Token.RBRA) {
+            i++;
+        }
+
+        if (i == size) {
+            return -1;
+        }
+
+        if (++i == size || tokens.token(i) != Token.LPAR) {
+            return i;
+        }
+
+        int depth = 1;
+        for (i++; i < size && depth > 0; i++) {
+            if (tokens.token(i) == Token.LPAR) {
+                depth++;
+            } else if (tokens.token(i) == Token.RPAR) {
+                depth--;
+            }
+        }
+
+        return depth == 0 ? i : -1;
+    }
+}
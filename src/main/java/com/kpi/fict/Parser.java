@@ -3,7 +3,7 @@ package com.kpi.fict;
 import java.util.*;
 
 public class Parser {
-    private static final Set<Token> DATA_TYPES = new HashSet<>() {{
+    public static final Set<Token> DATA_TYPES = new HashSet<>() {{
        add(Token.INT);
        add(Token.CHAR);
        add(Token.UNSIGNED_CHAR);
@@ -37,129 +37,184 @@ public class Parser {
        add(Token.MORE_EQUAL);
     }};
 
-    private final Lexer lexer;
-    private final Stack<String> bracketStack = new Stack<>();
-    private Node root;
+    private static final int LOGICAL_PRECEDENCE = 1;
+    private static final int ARITHMETIC_PRECEDENCE = 4;
+
+    private static final Map<Token, Integer> PRECEDENCE = new HashMap<>() {{
+       put(Token.OR, 1);
+       put(Token.AND, 2);
+       COMPARE.forEach(token -> put(token, 3));
+       put(Token.PLUS, 4);
+       put(Token.MINUS, 4);
+    }};
+
+    private final TokenCursor tokens;
+    private final TokenStream lazyTokens;
+    private final Ast ast;
+    private int depth;
+    private final Map<Integer, int[]> bodies = new HashMap<>();
+    private Character character;
     private Token token;
-    private String value;
 
-    public Parser(String program) {
-        lexer = new Lexer(program);
+    public Parser(CharSequence program) {
+        this(new Lexer(program));
+    }
+
+    private Parser(Lexer lexer) {
+        this(lexer, lexer.symbols());
+    }
+
+    public Parser(TokenCursor tokens, Symbols symbols) {
+        this(tokens, new Ast(symbols), null);
+    }
+
+    public Parser(TokenStream tokens, Symbols symbols, boolean lazy) {
+        this(tokens, new Ast(symbols), lazy ? tokens : null);
+    }
+
+    private Parser(TokenCursor tokens, Ast ast, TokenStream lazyTokens) {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.lazyTokens = lazyTokens;
     }
 
     public void parse(String programName) {
-        root = new Node(Token.PROGRAM, programName);
+        int root = ast.add(Token.PROGRAM, programName);
+        ast.setRoot(root);
+        nextToken();
 
         while (token != Token.EOF) {
 
-            if (token == null) {
-                nextToken();
-            } else if (token == Token.INCLUDE ||
+            if (token == Token.INCLUDE ||
                     token == Token.COMMENT ||
                     token == Token.MULTI_COMMENT) {
-                root.addChild(new Node(token, value));
-                nextToken();
-            } else if (DATA_TYPES.contains(token)) {
-                Token typeValue = token;
+                ast.addChild(root, ast.add(token, value()));
                 nextToken();
+            } else if (DATA_TYPES.contains(token) && tokens.peek(1) == Token.ID && tokens.peek(2) == Token.LBRA) {
+                ast.addChild(root, procedure());
+            } else {
+                throw new RuntimeException("Include statement or procedure were expected at line " + tokens.line());
+            }
+        }
+    }
 
-                if (token == Token.ID) {
-                    String idValue = value;
-                    nextToken();
+    private int procedure() {
+        Token typeValue = token;
+        nextToken();
+        int header = ast.add(typeValue, tokens.symbol());
+        nextToken();
+        nextToken();
 
-                    if (token == Token.LBRA) {
-                        nextToken();
+        int parameters = ast.add(Token.PARAMETERS);
+        parameters(parameters);
 
-                        List<Node> variables = parameters();
-                        Node parameters = new Node(Token.PARAMETERS);
-                        parameters.addChildren(variables);
+        nextToken();
 
-                        nextToken();
+        if (token != Token.LPAR) {
+            return Ast.NONE;
+        }
 
-                        if (token == Token.LPAR) {
-                            bracketStack.clear();
-                            bracketStack.push("{");
-                            List<Node> statements = new ArrayList<>();
-
-                            nextToken();
-                            while (!bracketStack.empty()) {
-                                Node node = closeIfBracket();
-                                if (node != null && node.type != Token.RPAR) {
-                                    statements.add(node);
-                                }
-                            }
-                            nextToken();
-
-                            Node procedure = new Node(Token.PROCEDURE);
-                            procedure.addChild(new Node(typeValue, idValue));
-                            procedure.addChild(parameters);
-                            procedure.addChildren(statements);
-
-                            root.addChild(procedure);
-                        }
-                    }
-                }
+        int procedure = ast.add(Token.PROCEDURE);
+        ast.addChild(procedure, header);
+        ast.addChild(procedure, parameters);
+
+        if (lazyTokens != null) {
+            skipBody(procedure);
+        } else {
+            body(procedure);
+        }
+        nextToken();
+
+        return procedure;
+    }
+
+    private void body(int procedure) {
+        depth = 1;
+
+        nextToken();
+        while (depth > 0) {
+            if (token == Token.RPAR || token == Token.EOF) {
+                depth--;
             } else {
-                throw new RuntimeException("Include statement or procedure were expected at line " + lexer.line);
+                ast.addChild(procedure, statement(1));
             }
         }
     }
 
-    private Node closeIfBracket() {
-        if ((token == Token.RPAR || token == Token.EOF) && !bracketStack.empty() && bracketStack.peek().equals("{")) {
-            bracketStack.pop();
-            return new Node(token);
+    private void skipBody(int procedure) {
+        int from = lazyTokens.position();
+        int depth = 1;
+
+        while (depth > 0 && token != Token.EOF) {
+            nextToken();
+            if (token == Token.LPAR) {
+                depth++;
+            } else if (token == Token.RPAR) {
+                depth--;
+            }
         }
 
-        return statement(1);
+        bodies.put(procedure, new int[] {from, lazyTokens.position() + 1});
+    }
+
+    public void parseBody(int procedure) {
+        int[] span = bodies.remove(procedure);
+        if (span == null) {
+            return;
+        }
+
+        Parser parser = new Parser(new TokenSlice(lazyTokens, span[0], span[1]), ast, null);
+        parser.nextToken();
+        parser.body(procedure);
+
+        if (character != null) {
+            setCharacter(ast, procedure, character);
+        }
     }
 
-    private Node statement(int level) {
-        Node statement = null;
+    private int statement(int level) {
+        int statement = Ast.NONE;
 
         if (token == Token.IF) {
-            statement = new Node(Token.IF);
+            statement = ast.add(Token.IF);
             nextToken();
 
             if (token == Token.LBRA) {
-                Node condition = condition();
-                statement.addChild(condition);
+                ast.addChild(statement, condition());
                 nextToken();
 
                 if (token == Token.LPAR) {
-                    bracketStack.push("{");
-                    List<Node> statements = new ArrayList<>();
-                    while (token != Token.RPAR || bracketStack.size() != level + 1) {
+                    depth++;
+                    while (token != Token.RPAR || depth != level + 1) {
                         nextToken();
-                        statements.add(statement(level + 1));
+                        ast.addChild(statement, statement(level + 1));
                     }
-                    bracketStack.pop();
+                    depth--;
                     nextToken();
-                    statement.addChildren(statements);
                 } else {
-                    throw new RuntimeException("'{' was expected at line " + lexer.line);
+                    throw new RuntimeException("'{' was expected at line " + tokens.line());
                 }
             } else {
-                throw new RuntimeException("Condition was expected at line " + lexer.line);
+                throw new RuntimeException("Condition was expected at line " + tokens.line());
             }
 
+        } else if (token == Token.ELSE && tokens.peek(1) == Token.IF) {
+            nextToken();
+            statement = statement(level);
+            ast.setType(statement, Token.ELSE_IF);
+
         } else if (token == Token.ELSE) {
             nextToken();
-            if (token == Token.IF) {
-                statement = statement(level);
-                statement.setType(Token.ELSE_IF);
-            } else if (token == Token.LPAR) {
-                bracketStack.push("{");
-                statement = new Node(Token.ELSE);
-                List<Node> statements = new ArrayList<>();
+            if (token == Token.LPAR) {
+                depth++;
+                statement = ast.add(Token.ELSE);
                 nextToken();
 
-                while (token != Token.RPAR || bracketStack.size() != level + 1) {
-                    statements.add(statement(level + 1));
+                while (token != Token.RPAR || depth != level + 1) {
+                    ast.addChild(statement, statement(level + 1));
                 }
-                bracketStack.pop();
+                depth--;
                 nextToken();
-                statement.addChildren(statements);
             }
 
         } else if (token == Token.ID ||
@@ -169,61 +224,102 @@ public class Parser {
         } else if (token == Token.SEMICOLON) {
             nextToken();
         } else if (token != Token.RPAR && token != Token.EOF) {
-            throw new RuntimeException("Unknown statement at line " + lexer.line);
+            throw new RuntimeException("Unknown statement at line " + tokens.line());
         }
 
         return statement;
     }
 
-    private Node condition() {
-        Node condition = null;
-        Node multipleCondition = null;
+    private int condition() {
+        nextToken();
+        int condition = binary(primary(), LOGICAL_PRECEDENCE);
+
+        if (token != Token.RBRA || !isCondition(condition)) {
+            throw new RuntimeException("Illegal condition at line " + tokens.line());
+        }
 
-        while (token != Token.RBRA) {
+        return condition;
+    }
+
+    private boolean isCondition(int node) {
+        if (LOGICAL.contains(ast.type(node))) {
+            for (int child = ast.firstChild(node); child != Ast.NONE; child = ast.nextSibling(child)) {
+                if (!isCondition(child)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return COMPARE.contains(ast.type(node))
+                && ast.firstChild(ast.child(node, 0)) == Ast.NONE
+                && ast.firstChild(ast.child(node, 1)) == Ast.NONE;
+    }
+
+    private int binary(int left, int minPrecedence) {
+        while (precedence(token) >= minPrecedence) {
+            Token operator = token;
+            int precedence = precedence(operator);
             nextToken();
 
-            if (token == Token.ID || LITERALS.contains(token)) {
-                Node operator1 = new Node(token, value);
-                nextToken();
-                if (COMPARE.contains(token)) {
-                    Node compare = new Node(token);
-                    nextToken();
-                    if (token == Token.ID || LITERALS.contains(token)) {
-                        Node operator2 = new Node(token, value);
+            int right = primary();
+            while (precedence(token) > precedence) {
+                right = binary(right, precedence + 1);
+            }
 
-                        condition = compare;
-                        condition.addChild(operator1);
-                        condition.addChild(operator2);
+            if (LOGICAL.contains(operator) && ast.is(left, operator)) {
+                ast.addChild(left, right);
+            } else {
+                int operation = ast.add(operator);
+                ast.addChild(operation, left);
+                ast.addChild(operation, right);
+                left = operation;
+            }
+        }
 
-                    } else {
-                        throw new RuntimeException("Illegal condition at line " + lexer.line);
-                    }
+        return left;
+    }
 
-                } else {
-                    throw new RuntimeException("Illegal condition at line " + lexer.line);
-                }
-            } else if (LOGICAL.contains(token) && condition != null) {
-                multipleCondition = new Node(token);
-                multipleCondition.addChild(condition);
-                multipleCondition.addChild(condition());
+    private int primary() {
+        if (token == Token.LBRA) {
+            nextToken();
+            int inner = binary(primary(), ARITHMETIC_PRECEDENCE);
+
+            if (token != Token.RBRA) {
+                throw new RuntimeException("')' was expected at line " + tokens.line());
             }
+
+            nextToken();
+            return inner;
+        }
+
+        if (token != Token.ID && !LITERALS.contains(token)) {
+            throw new RuntimeException("Operand was expected at line " + tokens.line());
         }
 
-        return multipleCondition != null ? multipleCondition : condition;
+        int operand = operand();
+        nextToken();
+
+        return operand;
+    }
+
+    private static int precedence(Token token) {
+        return PRECEDENCE.getOrDefault(token, 0);
     }
 
-    private Node expression() {
+    private int expression() {
         if (token == Token.ID) {
-            Node variable = new Node(token, value);
+            int variable = operand();
             nextToken();
 
-            Node value;
+            int value;
 
             if (token == Token.ASSIGNMENT) {
                 nextToken();
 
                 if (token == Token.ID || LITERALS.contains(token)) {
-                    value = new Node(token, this.value);
+                    value = operand();
                     nextToken();
 
                     if (token == Token.SEMICOLON) {
@@ -233,61 +329,63 @@ public class Parser {
                     } else if (token == Token.LBRA) {
                         nextToken();
 
-                        List<Node> variables = parameters();
-                        Node parameters = new Node(Token.PARAMETERS);
-                        parameters.addChildren(variables);
+                        int parameters = ast.add(Token.PARAMETERS);
+                        parameters(parameters);
 
                         nextToken();
 
                         if (token != Token.SEMICOLON) {
-                            throw new RuntimeException("';' was expected at line " + lexer.line);
+                            throw new RuntimeException("';' was expected at line " + tokens.line());
                         }
 
-                        Node initialization = new Node(Token.INITIALIZATION);
-                        Node function = new Node(Token.FUNCTION, value.value);
+                        int initialization = ast.add(Token.INITIALIZATION);
+                        int function = value;
+                        ast.setType(function, Token.FUNCTION);
 
-                        function.addChild(parameters);
+                        ast.addChild(function, parameters);
 
-                        initialization.addChild(variable);
-                        initialization.addChild(function);
+                        ast.addChild(initialization, variable);
+                        ast.addChild(initialization, function);
 
                         return initialization;
                     } else {
-                        throw new RuntimeException("Unknown expression at line " + lexer.line);
+                        throw new RuntimeException("Unknown expression at line " + tokens.line());
                     }
+                } else if (token == Token.LBRA) {
+                    return calculation(variable, primary());
                 } else {
-                    throw new RuntimeException("Unknown expression at line " + lexer.line);
+                    throw new RuntimeException("Unknown expression at line " + tokens.line());
                 }
             } else if (token == Token.LBRA) {
                 nextToken();
-                List<Node> variables = parameters();
-                Node parameters = new Node(Token.PARAMETERS);
-                parameters.addChildren(variables);
+                int parameters = ast.add(Token.PARAMETERS);
+                parameters(parameters);
 
                 nextToken();
 
                 if (token != Token.SEMICOLON) {
-                    throw new RuntimeException("';' was expected at line " + lexer.line);
+                    throw new RuntimeException("';' was expected at line " + tokens.line());
                 }
 
-                Node function = new Node(Token.FUNCTION, variable.value);
-                function.addChild(parameters);
+                int function = variable;
+                ast.setType(function, Token.FUNCTION);
+                ast.addChild(function, parameters);
 
                 return function;
             } else {
-                throw new RuntimeException("Unknown expression at line " + lexer.line);
+                throw new RuntimeException("Unknown expression at line " + tokens.line());
             }
         } else if (DATA_TYPES.contains(token)) {
             return declaration();
         } else if (token == Token.RETURN) {
             nextToken();
             if (token == Token.ID || LITERALS.contains(token)) {
-                Node returnNode = new Node(Token.RETURN);
-                returnNode.addChild(new Node(token, value));
+                int returnNode = ast.add(Token.RETURN);
+                ast.addChild(returnNode, operand());
                 nextToken();
 
                 if (token != Token.SEMICOLON) {
-                    throw new RuntimeException("';' was expected at line " + lexer.line);
+                    throw new RuntimeException("';' was expected at line " + tokens.line());
                 }
 
                 nextToken();
@@ -295,135 +393,123 @@ public class Parser {
                 return returnNode;
 
             } else {
-                throw new RuntimeException("Illegal return expression at line " + lexer.line);
+                throw new RuntimeException("Illegal return expression at line " + tokens.line());
             }
         } else {
-            throw new RuntimeException("Unknown expression at line " + lexer.line);
+            throw new RuntimeException("Unknown expression at line " + tokens.line());
         }
     }
 
-    private Node declaration() {
-        Node declaration = new Node(Token.DECLARATION);
+    private int declaration() {
+        int declaration = ast.add(Token.DECLARATION);
         Token variableType = token;
         nextToken();
 
         if (token == Token.ID) {
-            Node variable = new Node(variableType, value);
+            int variable = ast.add(variableType, tokens.symbol());
 
             nextToken();
             if (token != Token.SEMICOLON) {
-                throw new RuntimeException("';' was expected at line " + lexer.line);
+                throw new RuntimeException("';' was expected at line " + tokens.line());
             }
 
-            declaration.addChild(variable);
+            ast.addChild(declaration, variable);
             return declaration;
         } else {
-            throw new RuntimeException("Unknown declaration at line " + lexer.line);
+            throw new RuntimeException("Unknown declaration at line " + tokens.line());
         }
     }
 
-    private Node initialization(Node variable, Node value) {
-        Node initialization = new Node(Token.INITIALIZATION);
-        initialization.addChild(variable);
-        initialization.addChild(value);
+    private int initialization(int variable, int value) {
+        int initialization = ast.add(Token.INITIALIZATION);
+        ast.addChild(initialization, variable);
+        ast.addChild(initialization, value);
 
         return initialization;
     }
 
-    private Node calculation(Node variable, Node operator1) {
-        Node calculation = new Node(Token.CALCULATION);
-        calculation.addChild(variable);
-        Node operation = null, operator2 = null;
-
-        while (token != Token.SEMICOLON) {
-            if (token == Token.ID || LITERALS.contains(token)) {
-                operator2 = new Node(token, value);
-            } else if (OPERATIONS.contains(token)) {
-                operation = new Node(token);
-            } else {
-                throw new RuntimeException("Unknown operation at line " + lexer.line);
-            }
-
-            if (operation != null && operator1 != null && operator2 != null) {
-                operation.addChild(operator1);
-                operation.addChild(operator2);
-                calculation.addChild(operation);
-
-                nextToken();
-
-                if (token != Token.SEMICOLON) {
-                    throw new RuntimeException("';' was expected at line " + lexer.line);
-                }
+    private int calculation(int variable, int operator1) {
+        int calculation = ast.add(Token.CALCULATION);
+        ast.addChild(calculation, variable);
+        ast.addChild(calculation, binary(operator1, ARITHMETIC_PRECEDENCE));
 
-                return calculation;
-            }
-            nextToken();
+        if (token != Token.SEMICOLON) {
+            throw new RuntimeException("';' was expected at line " + tokens.line());
         }
 
-        return null;
+        return calculation;
     }
 
-    private List<Node> parameters() {
-        List<Node> variables = new ArrayList<>();
-
+    private void parameters(int parameters) {
         Token variableType = null;
-        String variableValue = null;
+        int variable = Ast.NONE;
         while (token != Token.RBRA) {
             if (LITERALS.contains(token)) {
-                variableType = token;
-                variableValue = value;
+                variable = ast.add(token, value());
             } else if (DATA_TYPES.contains(token)) {
                 variableType = token;
             } else {
                 switch (token) {
-                    case ID -> variableValue = value;
-                    case COMMA -> {
-                        variableType = null;
-                        variableValue = null;
-                    }
-                    case EOF -> throw new RuntimeException("Close bracket not found at line" + lexer.line);
+                    case ID -> variable = ast.add(variableType, tokens.symbol());
+                    case COMMA -> variableType = null;
+                    case EOF -> throw new RuntimeException("Close bracket not found at line" + tokens.line());
                 }
             }
 
-            if (variableValue != null) {
-                variables.add(new Node(variableType, variableValue));
+            if (variable != Ast.NONE) {
+                ast.addChild(parameters, variable);
                 variableType = null;
-                variableValue = null;
+                variable = Ast.NONE;
             }
 
             nextToken();
         }
+    }
 
-        return variables;
+    private int operand() {
+        return token == Token.ID ? ast.add(token, tokens.symbol()) : ast.add(token, value());
     }
 
-    public Node getRoot() {
-        return root;
+    public Ast getAst() {
+        return ast;
     }
 
     private void nextToken() {
-        lexer.nextToken();
-        token = lexer.token;
-        value = lexer.value;
+        tokens.advance();
+        token = tokens.token();
     }
 
-    public void setCharacter(Node node, char character) {
-        if (node.type == Token.ID && node.value.equals("argv[1][0]")) {
-            node.type = Token.CHARACTER;
-            node.value = String.valueOf(character);
-        }
+    private String value() {
+        return tokens.value();
+    }
 
-        List<Node> children = node.getChildren();
-        children.forEach(child -> this.setCharacter(child, character));
+    public void setCharacter(char character) {
+        this.character = character;
+        setCharacter(ast, ast.root(), character);
     }
 
-    public static void printStructure(Node root) {
-        printStructure(root, 0);
+    public static void setCharacter(Ast ast, int node, char character) {
+        int argument = ast.symbols().find("argv[1][0]");
+        if (argument == Symbols.NONE) {
+            return;
+        }
+
+        String value = String.valueOf(character);
+        new AstWalker(ast).walk(node, (current, depth) -> {
+            if (ast.is(current, Token.ID) && ast.symbol(current) == argument) {
+                ast.setType(current, Token.CHARACTER);
+                ast.setValue(current, value);
+                ast.setSymbol(current, Symbols.NONE);
+            }
+
+            return true;
+        });
     }
 
-    private static void printStructure(Node node, int level) {
-        System.out.println("\t".repeat(level) + node);
-        node.getChildren().forEach(child -> printStructure(child, level + 1));
+    public static void printStructure(Ast ast) {
+        new AstWalker(ast).walk(ast.root(), (node, depth) -> {
+            System.out.println("\t".repeat(depth) + ast.describe(node));
+            return true;
+        });
     }
 }
-
@@ -0,0 +1,231 @@
+package com.kpi.fict;
+
+import java.util.*;
+
+public class Peephole {
+
+    public enum Rule {
+        SELF_MOVE, REDUNDANT_MOVE, JUMP_TO_NEXT, DEAD_STORE
+    }
+
+    private static final Set<String> REGISTERS = new HashSet<>() {{
+        add("eax");
+        add("ebx");
+        add("ecx");
+        add("edx");
+        add("esi");
+        add("edi");
+        add("ebp");
+        add("esp");
+    }};
+
+    private static final Set<String> BARRIERS = new HashSet<>() {{
+        add("call");
+        add("invoke");
+        add("ret");
+        add("push");
+        add("pop");
+        add("proc");
+        add("endp");
+        add("end");
+    }};
+
+    private final EnumSet<Rule> rules;
+    private final int[] hits = new int[Rule.values().length];
+
+    public Peephole() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    public Peephole(EnumSet<Rule> rules) {
+        this.rules = rules;
+    }
+
+    public static Peephole parse(String names) {
+        EnumSet<Rule> rules = EnumSet.noneOf(Rule.class);
+        if (names.equals("none")) {
+            return new Peephole(rules);
+        }
+
+        for (String name : names.split(",")) {
+            try {
+                rules.add(Rule.valueOf(name.trim().toUpperCase().replace('-', '_')));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown peephole rule " + name);
+            }
+        }
+
+        return new Peephole(rules);
+    }
+
+    public List<String> optimize(List<String> lines) {
+        if (rules.isEmpty()) {
+            return lines;
+        }
+
+        List<String> current = lines;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            String[][] instructions = new String[current.size()][];
+            for (int i = 0; i < instructions.length; i++) {
+                instructions[i] = instruction(current.get(i));
+            }
+
+            List<String> next = new ArrayList<>(current.size());
+            String[] previous = null;
+            for (int i = 0; i < instructions.length; i++) {
+                Rule rule = match(current, instructions, i, previous);
+                if (rule != null) {
+                    hits[rule.ordinal()]++;
+                    changed = true;
+                } else {
+                    next.add(current.get(i));
+                    previous = instructions[i];
+                }
+            }
+
+            current = next;
+        }
+
+        return current;
+    }
+
+    public int hits(Rule rule) {
+        return hits[rule.ordinal()];
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Rule rule : Rule.values()) {
+            if (rules.contains(rule)) {
+                report.append(rule.name().toLowerCase().replace('_', '-')).append(": ").append(hits(rule)).append('\n');
+            }
+        }
+
+        return report.toString();
+    }
+
+    private Rule match(List<String> lines, String[][] instructions, int index, String[] previous) {
+        String[] instruction = instructions[index];
+        if (instruction == null) {
+            return null;
+        }
+
+        if (instruction[0].equals("mov")) {
+            if (rules.contains(Rule.SELF_MOVE) && same(instruction[1], instruction[2])) {
+                return Rule.SELF_MOVE;
+            }
+
+            if (rules.contains(Rule.REDUNDANT_MOVE) && previous != null && previous[0].equals("mov")
+                    && (same(previous[1], instruction[1]) && same(previous[2], instruction[2])
+                        || same(previous[1], instruction[2]) && same(previous[2], instruction[1]))) {
+                return Rule.REDUNDANT_MOVE;
+            }
+
+            if (rules.contains(Rule.DEAD_STORE) && isDeadStore(instructions, index, instruction[1])) {
+                return Rule.DEAD_STORE;
+            }
+        }
+
+        if (rules.contains(Rule.JUMP_TO_NEXT) && instruction[0].startsWith("j") && instruction.length == 2
+                && jumpsToNext(lines, index, instruction[1])) {
+            return Rule.JUMP_TO_NEXT;
+        }
+
+        return null;
+    }
+
+    private boolean isDeadStore(String[][] instructions, int index, String target) {
+        for (int i = index + 1; i < instructions.length; i++) {
+            String[] instruction = instructions[i];
+
+            if (instruction == null || instruction[0].startsWith("j") || BARRIERS.contains(instruction[0])) {
+                return false;
+            }
+
+            if (instruction[0].equals("mov") && same(instruction[1], target)) {
+                return !mentions(instruction[2], target);
+            }
+
+            for (int operand = 1; operand < instruction.length; operand++) {
+                if (mentions(instruction[operand], target)) {
+                    return false;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean jumpsToNext(List<String> lines, int index, String label) {
+        for (int i = index + 1; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (!line.endsWith(":")) {
+                return false;
+            }
+
+            if (line.substring(0, line.length() - 1).equals(label)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String[] instruction(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.endsWith(":")) {
+            return null;
+        }
+
+        int space = line.indexOf(' ');
+        if (space < 0) {
+            return new String[] {line.toLowerCase()};
+        }
+
+        String mnemonic = line.substring(0, space).toLowerCase();
+        String[] operands = line.substring(space + 1).split(",");
+        if (operands.length > 1 && !mnemonic.equals("invoke")) {
+            String[] instruction = new String[operands.length + 1];
+            instruction[0] = mnemonic;
+            for (int i = 0; i < operands.length; i++) {
+                instruction[i + 1] = operands[i].trim();
+            }
+            return instruction;
+        }
+
+        if (line.substring(space + 1).trim().equals("proc") || line.substring(space + 1).trim().equals("endp")) {
+            return new String[] {line.substring(space + 1).trim()};
+        }
+
+        return new String[] {mnemonic, line.substring(space + 1).trim()};
+    }
+
+    private static boolean same(String operand1, String operand2) {
+        if (REGISTERS.contains(operand1.toLowerCase())) {
+            return operand1.equalsIgnoreCase(operand2);
+        }
+
+        return operand1.equals(operand2);
+    }
+
+    private static boolean mentions(String operand, String target) {
+        boolean register = REGISTERS.contains(target.toLowerCase());
+        int length = target.length();
+
+        for (int start = 0; start + length <= operand.length(); start++) {
+            if (operand.regionMatches(register, start, target, 0, length)
+                    && (start == 0 || !isWordPart(operand.charAt(start - 1)))
+                    && (start + length == operand.length() || !isWordPart(operand.charAt(start + length)))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isWordPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '@' || ch == '$' || ch == '?';
+    }
+}
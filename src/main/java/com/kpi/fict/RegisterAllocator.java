@@ -0,0 +1,235 @@
+package com.kpi.fict;
+
+import java.util.Arrays;
+
+public class RegisterAllocator {
+    public static final int SPILLED = -1;
+
+    public static class Allocation {
+        private final int[] variableSymbols;
+        private final int[] variables;
+        private final int[] temps;
+
+        private Allocation(int[] variableSymbols, int[] variables, int[] temps) {
+            this.variableSymbols = variableSymbols;
+            this.variables = variables;
+            this.temps = temps;
+        }
+
+        public int register(Ir.Operand operand) {
+            return switch (operand.kind) {
+                case VARIABLE -> {
+                    int index = Arrays.binarySearch(variableSymbols, operand.id);
+                    yield index < 0 ? SPILLED : variables[index];
+                }
+                case TEMP -> temps[operand.id];
+                default -> SPILLED;
+            };
+        }
+    }
+
+    private int[] variableIndices = new int[0];
+    private int[] tempIndices;
+
+    private int[] candidates;
+    private int[] starts;
+    private int[] ends;
+    private int[] calls;
+    private int count;
+    private int callCount;
+
+    public Allocation allocate(Ir ir, int registerCount) {
+        tempIndices = new int[ir.temps()];
+        Arrays.fill(tempIndices, SPILLED);
+
+        candidates = new int[ir.params().length + 8];
+        starts = new int[candidates.length];
+        ends = new int[candidates.length];
+        calls = new int[8];
+        count = 0;
+        callCount = 0;
+
+        for (Ir.Operand param : ir.params()) {
+            touch(param, 0);
+        }
+
+        int index = 0;
+        for (Ir.Block block : ir.blocks()) {
+            for (Ir.Instruction instruction : block.instructions) {
+                int position = 3 * index++;
+
+                for (Ir.Operand operand : instruction.operands) {
+                    touch(operand, position + 1);
+                }
+
+                if (instruction.op == Ir.Op.CALL || instruction.op == Ir.Op.PRINT) {
+                    addCall(position + 2);
+                }
+
+                if (instruction.target != null) {
+                    touch(instruction.target, position + 3);
+                }
+            }
+        }
+
+        int[] assignment = scan(registerCount);
+        int[] temps = new int[ir.temps()];
+        Arrays.fill(temps, SPILLED);
+
+        int variableCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (candidates[i] >= 0) {
+                variableCount++;
+            }
+        }
+
+        int[] variableSymbols = new int[variableCount];
+        int[] variables = new int[variableCount];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (candidates[i] >= 0) {
+                variableSymbols[next++] = candidates[i];
+                variableIndices[candidates[i]] = SPILLED;
+            } else {
+                temps[~candidates[i]] = assignment[i];
+            }
+        }
+
+        Arrays.sort(variableSymbols);
+        for (int i = 0; i < count; i++) {
+            if (candidates[i] >= 0) {
+                variables[Arrays.binarySearch(variableSymbols, candidates[i])] = assignment[i];
+            }
+        }
+
+        return new Allocation(variableSymbols, variables, temps);
+    }
+
+    private void touch(Ir.Operand operand, int position) {
+        int[] indices;
+        int index;
+        int key;
+
+        switch (operand.kind) {
+            case VARIABLE -> {
+                if (operand.id >= variableIndices.length) {
+                    int length = variableIndices.length;
+                    variableIndices = Arrays.copyOf(variableIndices, Math.max(operand.id + 1, length * 2));
+                    Arrays.fill(variableIndices, length, variableIndices.length, SPILLED);
+                }
+                indices = variableIndices;
+                index = operand.id;
+                key = operand.id;
+            }
+            case TEMP -> {
+                indices = tempIndices;
+                index = operand.id;
+                key = ~operand.id;
+            }
+            default -> {
+                return;
+            }
+        }
+
+        if (indices[index] == SPILLED) {
+            indices[index] = addCandidate(key, position);
+        }
+
+        int candidate = indices[index];
+        starts[candidate] = Math.min(starts[candidate], position);
+        ends[candidate] = Math.max(ends[candidate], position);
+    }
+
+    private int addCandidate(int key, int position) {
+        if (count == candidates.length) {
+            candidates = Arrays.copyOf(candidates, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+
+        candidates[count] = key;
+        starts[count] = position;
+        ends[count] = position;
+
+        return count++;
+    }
+
+    private void addCall(int position) {
+        if (callCount == calls.length) {
+            calls = Arrays.copyOf(calls, callCount * 2);
+        }
+
+        calls[callCount++] = position;
+    }
+
+    private boolean crossesCall(int candidate) {
+        for (int i = 0; i < callCount; i++) {
+            if (starts[candidate] < calls[i] && calls[i] < ends[candidate]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int[] scan(int registerCount) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> starts[a] != starts[b] ? Integer.compare(starts[a], starts[b]) : Integer.compare(a, b));
+
+        int[] assignment = new int[count];
+        Arrays.fill(assignment, SPILLED);
+
+        int[] active = new int[registerCount];
+        int activeCount = 0;
+        boolean[] free = new boolean[registerCount];
+        Arrays.fill(free, true);
+
+        for (int candidate : order) {
+            int kept = 0;
+            for (int i = 0; i < activeCount; i++) {
+                if (ends[active[i]] < starts[candidate]) {
+                    free[assignment[active[i]]] = true;
+                } else {
+                    active[kept++] = active[i];
+                }
+            }
+            activeCount = kept;
+
+            if (registerCount == 0 || crossesCall(candidate)) {
+                continue;
+            }
+
+            if (activeCount == registerCount) {
+                int furthest = 0;
+                for (int i = 1; i < activeCount; i++) {
+                    if (ends[active[i]] > ends[active[furthest]]) {
+                        furthest = i;
+                    }
+                }
+
+                if (ends[active[furthest]] <= ends[candidate]) {
+                    continue;
+                }
+
+                assignment[candidate] = assignment[active[furthest]];
+                assignment[active[furthest]] = SPILLED;
+                active[furthest] = candidate;
+                continue;
+            }
+
+            for (int register = 0; register < registerCount; register++) {
+                if (free[register]) {
+                    free[register] = false;
+                    assignment[candidate] = register;
+                    break;
+                }
+            }
+            active[activeCount++] = candidate;
+        }
+
+        return assignment;
+    }
+}
@@ -0,0 +1,72 @@
+package com.kpi.fict;
+
+import java.util.Arrays;
+
+public class SymbolTable<T> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] heads = new int[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int[] entrySymbols = new int[INITIAL_CAPACITY];
+    private int[] entryDepths = new int[INITIAL_CAPACITY];
+    private int[] shadowed = new int[INITIAL_CAPACITY];
+    private int[] marks = new int[16];
+    private int size;
+    private int depth;
+
+    public void enter() {
+        if (depth == marks.length) {
+            marks = Arrays.copyOf(marks, depth * 2);
+        }
+
+        marks[depth++] = size;
+    }
+
+    public void exit() {
+        if (depth == 0) {
+            throw new RuntimeException("There is no scope to exit");
+        }
+
+        int mark = marks[--depth];
+        while (size > mark) {
+            size--;
+            heads[entrySymbols[size]] = shadowed[size];
+            values[size] = null;
+        }
+    }
+
+    public boolean declare(int symbol, T value) {
+        if (symbol >= heads.length) {
+            heads = Arrays.copyOf(heads, Math.max(symbol + 1, heads.length * 2));
+        }
+
+        int head = heads[symbol];
+        if (head != 0 && entryDepths[head - 1] == depth) {
+            return false;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            entrySymbols = Arrays.copyOf(entrySymbols, size * 2);
+            entryDepths = Arrays.copyOf(entryDepths, size * 2);
+            shadowed = Arrays.copyOf(shadowed, size * 2);
+        }
+
+        values[size] = value;
+        entrySymbols[size] = symbol;
+        entryDepths[size] = depth;
+        shadowed[size] = head;
+        heads[symbol] = ++size;
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T lookup(int symbol) {
+        if (symbol < 0 || symbol >= heads.length || heads[symbol] == 0) {
+            return null;
+        }
+
+        return (T) values[heads[symbol] - 1];
+    }
+}
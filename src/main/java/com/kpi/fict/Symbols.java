@@ -0,0 +1,109 @@
+package com.kpi.fict;
+
+import java.util.Arrays;
+
+public class Symbols {
+    public static final int NONE = -1;
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int[] slots = new int[128];
+    private int size;
+
+    public int intern(CharSequence source, int start, int length) {
+        int hash = hash(source, start, length);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int symbol = slots[slot] - 1;
+
+            if (symbol == NONE) {
+                return add(source.subSequence(start, start + length).toString(), hash, slot);
+            }
+
+            if (hashes[symbol] == hash && matches(names[symbol], source, start, length)) {
+                return symbol;
+            }
+        }
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    public int find(String name) {
+        int hash = hash(name, 0, name.length());
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int symbol = slots[slot] - 1;
+
+            if (hashes[symbol] == hash && names[symbol].equals(name)) {
+                return symbol;
+            }
+        }
+
+        return NONE;
+    }
+
+    public String name(int symbol) {
+        return names[symbol];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        names[size] = name;
+        hashes[size] = hash;
+        slots[slot] = size + 1;
+
+        if (++size * 2 > slots.length) {
+            rehash();
+        }
+
+        return size - 1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+
+        for (int symbol = 0; symbol < size; symbol++) {
+            int slot = hashes[symbol] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = symbol + 1;
+        }
+    }
+
+    private static int hash(CharSequence source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
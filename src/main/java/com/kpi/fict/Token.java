@@ -4,5 +4,5 @@ public enum Token {
     ID, DECIMAL, OCTAL, HEXADEMICAL, CHARACTER, STRING, IF, ELSE, ELSE_IF, LPAR, RPAR, LBRA,
     RBRA, RETURN, INT, CHAR, UNSIGNED_CHAR,EQUAL, NOT_EQUAL, LESS, MORE, LESS_EQUAL, MORE_EQUAL,
     NOT, AND, OR, PLUS, MINUS, ASSIGNMENT, VOID, COMMA, SEMICOLON, EOF, COMMENT, MULTI_COMMENT,
-    INCLUDE, PROCEDURE, PARAMETERS, PROGRAM, EXPRESSION, DECLARATION, INITIALIZATION, CALCULATION, FUNCTION
+    INCLUDE, PROCEDURE, PARAMETERS, PROGRAM, EXPRESSION, DECLARATION, INITIALIZATION, CALCULATION, FUNCTION, BLOCK
 }
@@ -0,0 +1,15 @@
+package com.kpi.fict;
+
+public interface TokenCursor {
+    void advance();
+
+    Token token();
+
+    String value();
+
+    int line();
+
+    int symbol();
+
+    Token peek(int distance);
+}
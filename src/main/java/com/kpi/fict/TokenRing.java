@@ -0,0 +1,162 @@
+package com.kpi.fict;
+
+public class TokenRing implements TokenCursor {
+    private static final Token[] TOKENS = Token.values();
+    private static final int SPIN_LIMIT = 128;
+
+    private final CharSequence program;
+    private final LineIndex lines;
+    private final Lexer lexer;
+    private final int mask;
+    private final byte[] kinds;
+    private final int[] starts;
+    private final int[] lengths;
+    private final int[] symbols;
+
+    private volatile long published;
+    private volatile long consumed;
+    private volatile boolean cancelled;
+    private volatile RuntimeException failure;
+
+    private long position = -1;
+    private long available;
+
+    public TokenRing(CharSequence program, Symbols symbols, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new RuntimeException("Token ring capacity must be a power of two");
+        }
+
+        this.program = program;
+        lines = new LineIndex(program);
+        lexer = new Lexer(program, symbols, lines, 0, program.length());
+        mask = capacity - 1;
+        kinds = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        this.symbols = new int[capacity];
+    }
+
+    public TokenRing start() {
+        Thread producer = new Thread(this::produce, "lexer");
+        producer.setDaemon(true);
+        producer.start();
+
+        return this;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void produce() {
+        long tail = 0;
+        long free = 0;
+
+        try {
+            do {
+                lexer.nextToken();
+
+                int spins = 0;
+                while (tail - free > mask) {
+                    if (cancelled) {
+                        return;
+                    }
+                    free = consumed;
+                    spins = backOff(spins);
+                }
+
+                int slot = (int) (tail & mask);
+                kinds[slot] = (byte) lexer.token.ordinal();
+                starts[slot] = lexer.start;
+                lengths[slot] = lexer.length;
+                symbols[slot] = lexer.symbol;
+                published = ++tail;
+            } while (lexer.token != Token.EOF && !cancelled);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    private void await(long index) {
+        int spins = 0;
+        while (index >= available) {
+            available = published;
+            if (index < available) {
+                return;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            spins = backOff(spins);
+        }
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+
+        return spins + 1;
+    }
+
+    private int slot(long index) {
+        return (int) (index & mask);
+    }
+
+    @Override
+    public void advance() {
+        if (position >= 0 && token() == Token.EOF) {
+            return;
+        }
+
+        await(position + 1);
+        position++;
+        consumed = position;
+    }
+
+    @Override
+    public Token token() {
+        return TOKENS[kinds[slot(position)]];
+    }
+
+    @Override
+    public String value() {
+        int slot = slot(position);
+        return token() == Token.EOF
+                ? null
+                : program.subSequence(starts[slot], starts[slot] + lengths[slot]).toString();
+    }
+
+    @Override
+    public int line() {
+        int slot = slot(position);
+        return lines.line(starts[slot] + lengths[slot]);
+    }
+
+    @Override
+    public int symbol() {
+        return symbols[slot(position)];
+    }
+
+    @Override
+    public Token peek(int distance) {
+        if (distance > mask) {
+            throw new RuntimeException("Lookahead " + distance + " exceeds token ring capacity");
+        }
+
+        if (position >= 0 && token() == Token.EOF) {
+            return Token.EOF;
+        }
+
+        for (long index = position + 1; index <= position + distance; index++) {
+            await(index);
+            if (TOKENS[kinds[slot(index)]] == Token.EOF) {
+                return Token.EOF;
+            }
+        }
+
+        return distance == 0 ? token() : TOKENS[kinds[slot(position + distance)]];
+    }
+}
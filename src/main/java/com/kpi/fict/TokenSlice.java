@@ -0,0 +1,50 @@
+package com.kpi.fict;
+
+public class TokenSlice implements TokenCursor {
+    private final TokenStream tokens;
+    private final int from;
+    private final int to;
+    private int position;
+
+    public TokenSlice(TokenStream tokens, int from, int to) {
+        this.tokens = tokens;
+        this.from = from;
+        this.to = to;
+        position = from - 1;
+    }
+
+    @Override
+    public void advance() {
+        if (position >= to) {
+            throw new RuntimeException("Token slice overrun at token " + to);
+        }
+
+        position++;
+    }
+
+    @Override
+    public Token token() {
+        return position >= to ? Token.EOF : tokens.token(position);
+    }
+
+    @Override
+    public String value() {
+        return position >= to ? null : tokens.value(position);
+    }
+
+    @Override
+    public int line() {
+        return tokens.line(Math.min(position, to - 1));
+    }
+
+    @Override
+    public int symbol() {
+        return position >= to ? Symbols.NONE : tokens.symbol(position);
+    }
+
+    @Override
+    public Token peek(int distance) {
+        int index = position + distance;
+        return index >= to ? Token.EOF : tokens.token(index);
+    }
+}
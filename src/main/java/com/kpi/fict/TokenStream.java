@@ -0,0 +1,126 @@
+package com.kpi.fict;
+
+import java.util.Arrays;
+
+public class TokenStream implements TokenCursor {
+    private static final Token[] TOKENS = Token.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final CharSequence program;
+    private final LineIndex lines;
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] symbols = new int[INITIAL_CAPACITY];
+    private int size;
+    private int position = -1;
+
+    public TokenStream(CharSequence program, LineIndex lines) {
+        this.program = program;
+        this.lines = lines;
+    }
+
+    public void add(Token token, int start, int length, int symbol) {
+        ensureCapacity(size + 1);
+
+        kinds[size] = (byte) token.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol;
+        size++;
+    }
+
+    public void append(TokenStream chunk, int[] symbolMap) {
+        int count = chunk.size;
+        if (count > 0 && chunk.token(count - 1) == Token.EOF) {
+            count--;
+        }
+
+        ensureCapacity(size + count);
+        System.arraycopy(chunk.kinds, 0, kinds, size, count);
+        System.arraycopy(chunk.starts, 0, starts, size, count);
+        System.arraycopy(chunk.lengths, 0, lengths, size, count);
+
+        for (int i = 0; i < count; i++) {
+            int symbol = chunk.symbols[i];
+            symbols[size + i] = symbol == Symbols.NONE ? Symbols.NONE : symbolMap[symbol];
+        }
+        size += count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > kinds.length) {
+            capacity = Math.max(capacity, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public Token token(int index) {
+        return TOKENS[kinds[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines.line(starts[index] + lengths[index]);
+    }
+
+    public int symbol(int index) {
+        return symbols[index];
+    }
+
+    public String value(int index) {
+        return token(index) == Token.EOF
+                ? null
+                : program.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    @Override
+    public void advance() {
+        if (position < size - 1) {
+            position++;
+        }
+    }
+
+    @Override
+    public Token token() {
+        return token(position);
+    }
+
+    @Override
+    public String value() {
+        return value(position);
+    }
+
+    @Override
+    public int line() {
+        return line(position);
+    }
+
+    @Override
+    public int symbol() {
+        return symbol(position);
+    }
+
+    @Override
+    public Token peek(int distance) {
+        return token(Math.min(position + distance, size - 1));
+    }
+}
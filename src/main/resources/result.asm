@@ -18,62 +18,60 @@ includelib masm32\lib\msvcrt.lib
 
 .data
 	lower_case DD ?
-	upper_case DD ?
 
 
 .code
 to_lower_case proc
 push ebp
 mov ebp, esp
-mov EAX, [ebp+8]
-cmp EAX, 41h
-JGE @to_lower_case0
-@to_lower_case4:
-cmp EAX, 0
-JGE @to_lower_case2
-@to_lower_case5:
-mov eax, 0
+mov EBX, [ebp+8]
+cmp EBX, 65
+JL @to_lower_case_1
+cmp EBX, 90
+JG @to_lower_case_1
+mov ECX, EBX
+ADD ECX, 32
+mov EAX, ECX
 pop ebp
 ret
-@to_lower_case2:
-cmp EAX, 127
-JLE @to_lower_case3
-JMP @to_lower_case5
-@to_lower_case3:
+@to_lower_case_1:
+cmp EBX, 0
+JL @to_lower_case_2
+cmp EBX, 127
+JG @to_lower_case_2
+mov EAX, EBX
 pop ebp
 ret
-@to_lower_case0:
-cmp EAX, 5Ah
-JLE @to_lower_case1
-JMP @to_lower_case4
-@to_lower_case1:
-mov lower_case, EAX
-ADD lower_case, 32
-mov eax, lower_case
+@to_lower_case_2:
+mov EAX, 0
 pop ebp
 ret
 to_lower_case endp
 
 
 main:
-mov upper_case, 'q'
-push upper_case
+invoke crt___p___argc
+mov EBX, [EAX]
+cmp EBX, 2
+JE @main_1
+invoke ExitProcess, 1
+@main_1:
+push 'q'
 call to_lower_case
-mov lower_case, eax
+add esp, 4
+mov lower_case, EAX
 cmp lower_case, 0
-JE @main0
-mov EAX, upper_case
-cmp lower_case, EAX
-JE @main1
-invoke crt_printf, ADDR message3, upper_case, lower_case
-jmp @end
-@main1:
-invoke crt_printf, ADDR message2
-jmp @end
-@main0:
+JNE @main_2
 invoke crt_printf, ADDR message1
-jmp @end
-@end:
+jmp @main_4
+@main_2:
+cmp lower_case, 'q'
+JNE @main_3
+invoke crt_printf, ADDR message2
+jmp @main_4
+@main_3:
+invoke crt_printf, ADDR message3, 'q', lower_case
+@main_4:
 invoke ExitProcess, 0
 end main
 
@@ -0,0 +1,12 @@
+// Must be rejected with "Variable x has already been declared": the inner x
+// would share the outer x's storage and clobber it before the printf.
+int main(int argc, char **argv) {
+    int x;
+    x = 1;
+    if (argc == 2) {
+        int x;
+        x = 7;
+    }
+    printf("%d", x);
+    return 0;
+}